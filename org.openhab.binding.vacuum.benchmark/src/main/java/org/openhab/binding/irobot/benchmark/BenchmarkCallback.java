@@ -0,0 +1,100 @@
+package org.openhab.binding.irobot.benchmark;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.smarthome.config.core.Configuration;
+import org.eclipse.smarthome.core.thing.Bridge;
+import org.eclipse.smarthome.core.thing.Channel;
+import org.eclipse.smarthome.core.thing.ChannelGroupUID;
+import org.eclipse.smarthome.core.thing.ChannelUID;
+import org.eclipse.smarthome.core.thing.Thing;
+import org.eclipse.smarthome.core.thing.ThingStatusInfo;
+import org.eclipse.smarthome.core.thing.ThingTypeUID;
+import org.eclipse.smarthome.core.thing.ThingUID;
+import org.eclipse.smarthome.core.thing.binding.ThingHandlerCallback;
+import org.eclipse.smarthome.core.thing.binding.builder.ChannelBuilder;
+import org.eclipse.smarthome.core.thing.type.ChannelGroupTypeUID;
+import org.eclipse.smarthome.core.thing.type.ChannelTypeUID;
+import org.eclipse.smarthome.core.types.Command;
+import org.eclipse.smarthome.core.types.State;
+
+// Stands in for the framework, so that a handler can run without openHAB
+// runtime. Only counts what it gets, so that the benchmark measures the
+// binding and not the event bus.
+public class BenchmarkCallback implements ThingHandlerCallback {
+
+    public long stateUpdates;
+    public long thingUpdates;
+    public long statusUpdates;
+
+    @Override
+    public void stateUpdated(ChannelUID channelUID, State state) {
+        stateUpdates++;
+    }
+
+    @Override
+    public void postCommand(ChannelUID channelUID, Command command) {
+    }
+
+    @Override
+    public void statusUpdated(Thing thing, ThingStatusInfo thingStatus) {
+        statusUpdates++;
+    }
+
+    @Override
+    public void thingUpdated(Thing thing) {
+        thingUpdates++;
+    }
+
+    @Override
+    public void validateConfigurationParameters(Thing thing, Map<String, Object> configurationParameters) {
+    }
+
+    @Override
+    public void configurationUpdated(Thing thing) {
+    }
+
+    @Override
+    public void migrateThingType(Thing thing, ThingTypeUID thingTypeUID, Configuration configuration) {
+    }
+
+    @Override
+    public void channelTriggered(Thing thing, ChannelUID channelUID, String event) {
+    }
+
+    @Override
+    public ChannelBuilder createChannelBuilder(ChannelUID channelUID, ChannelTypeUID channelTypeUID) {
+        // There is no channel type registry, so the item type stays unknown
+        return ChannelBuilder.create(channelUID, null).withType(channelTypeUID);
+    }
+
+    @Override
+    public ChannelBuilder editChannel(Thing thing, ChannelUID channelUID) {
+        Channel channel = thing.getChannel(channelUID.getId());
+
+        if (channel == null) {
+            throw new IllegalArgumentException(String.format("Channel '%s' does not exist for thing '%s'",
+                    channelUID, thing.getUID()));
+        }
+
+        return ChannelBuilder.create(channel);
+    }
+
+    @Override
+    public List<ChannelBuilder> createChannelBuilders(ChannelGroupUID channelGroupUID,
+            ChannelGroupTypeUID channelGroupTypeUID) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isChannelLinked(ChannelUID channelUID) {
+        return true;
+    }
+
+    @Override
+    public Bridge getBridge(ThingUID bridgeUID) {
+        return null;
+    }
+}
@@ -0,0 +1,22 @@
+package org.openhab.binding.irobot.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Same as JMH's own Main, accepting the same options, but always adds GC
+// profiler, so that allocation rate (gc.alloc.rate.norm, bytes per operation)
+// is reported along with throughput.
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cmdOptions = new CommandLineOptions(args);
+        Options options = new OptionsBuilder().parent(cmdOptions).addProfiler(GCProfiler.class).build();
+
+        new Runner(options).run();
+    }
+}
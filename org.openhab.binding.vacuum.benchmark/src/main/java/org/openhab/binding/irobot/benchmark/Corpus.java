@@ -0,0 +1,40 @@
+package org.openhab.binding.irobot.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Recorded payloads, stored in resources/corpus, one message per line.
+// Empty lines and lines starting with '#' are skipped.
+public class Corpus {
+
+    public static List<byte[]> load(String name) throws IOException {
+        List<byte[]> messages = new ArrayList<>();
+        InputStream in = Corpus.class.getResourceAsStream("/corpus/" + name);
+
+        if (in == null) {
+            throw new IOException("No such corpus: " + name);
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    messages.add(line.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+
+        if (messages.isEmpty()) {
+            throw new IOException("Corpus is empty: " + name);
+        }
+
+        return messages;
+    }
+}
@@ -0,0 +1,38 @@
+package org.openhab.binding.irobot.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openhab.binding.irobot.internal.IdentProtocol.IdentData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Parsing of IDENT replies, which arrive during every discovery scan
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdentBenchmark {
+
+    private byte[] reply;
+
+    @Setup
+    public void setup() throws IOException {
+        reply = Corpus.load("ident.jsonl").get(0);
+    }
+
+    @Benchmark
+    public IdentData parseIdent() {
+        return new IdentData(reply, reply.length);
+    }
+}
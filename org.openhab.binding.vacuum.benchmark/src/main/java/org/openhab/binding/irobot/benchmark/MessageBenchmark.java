@@ -0,0 +1,110 @@
+package org.openhab.binding.irobot.benchmark;
+
+import static org.openhab.binding.irobot.IRobotBindingConstants.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.smarthome.config.core.ConfigConstants;
+import org.eclipse.smarthome.config.core.Configuration;
+import org.eclipse.smarthome.core.thing.Thing;
+import org.eclipse.smarthome.core.thing.binding.builder.ThingBuilder;
+import org.openhab.binding.irobot.handler.RoombaHandler;
+import org.openhab.binding.irobot.internal.IdentCache;
+import org.openhab.binding.irobot.internal.IdentProtocol.IdentData;
+import org.openhab.binding.irobot.internal.KeyedSerialExecutor;
+import org.openhab.binding.irobot.roomba.RoombaConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Decoding of MQTT messages from the robot, the way it happens for every
+// incoming message. Corpus files contain sequences of real messages;
+// they're fed in a loop, so both changed and repeated values are covered.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageBenchmark {
+
+    private static final String TOPIC = "$aws/things/3168820480607740/shadow/update";
+    private static final String ADDRESS = "192.0.2.1";
+    // Too old to be supported, so initialize() gives up right after IDENT,
+    // which is answered from the cache, without going to the network
+    private static final String IDENT = "{\"ver\":\"1\",\"hostname\":\"Roomba-3168820480607740\","
+            + "\"robotname\":\"Benchmark\"}";
+
+    @Param({ "shadow.jsonl", "mission.jsonl", "signal.jsonl", "schedule.jsonl" })
+    public String corpus;
+
+    private Path userData;
+    private KeyedSerialExecutor executor;
+    private RoombaHandler handler;
+    private BenchmarkCallback callback;
+    private byte[][] messages;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        List<byte[]> list = Corpus.load(corpus);
+        // Only the address, everything else is what the binding ships with
+        Configuration configuration = new Configuration(
+                Collections.singletonMap(RoombaConfiguration.FIELD_IPADDRESS, ADDRESS));
+        Thing thing = ThingBuilder.create(THING_TYPE_ROOMBA, "benchmark").withConfiguration(configuration).build();
+        IdentCache identCache = new IdentCache();
+        byte[] ident = IDENT.getBytes(StandardCharsets.UTF_8);
+        CountDownLatch initialized = new CountDownLatch(1);
+
+        // Mission history goes here
+        userData = Files.createTempDirectory("irobot-benchmark");
+        System.setProperty(ConfigConstants.USERDATA_DIR_PROG_ARGUMENT, userData.toString());
+
+        messages = list.toArray(new byte[list.size()][]);
+        executor = new KeyedSerialExecutor("benchmark", 1);
+        callback = new BenchmarkCallback();
+        identCache.put(ADDRESS, new IdentData(ident, ident.length));
+        handler = new RoombaHandler(thing, executor, identCache, null, null, null);
+        handler.setCallback(callback);
+        handler.initialize();
+
+        // Let the queued initialization finish before measuring
+        executor.getExecutor(thing.getUID().getAsString()).execute(initialized::countDown);
+        initialized.await();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        // Deletes the mission history, like removing the thing does
+        handler.handleRemoval();
+        handler.dispose();
+        executor.shutdown();
+        Files.deleteIfExists(userData.resolve(BINDING_ID));
+        Files.deleteIfExists(userData);
+    }
+
+    @Benchmark
+    public long processMessage() {
+        byte[] payload = messages[next];
+
+        next = (next + 1) % messages.length;
+        handler.processMessage(TOPIC, payload);
+        return callback.stateUpdates;
+    }
+}
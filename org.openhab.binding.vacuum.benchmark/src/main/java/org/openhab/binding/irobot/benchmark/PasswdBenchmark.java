@@ -0,0 +1,52 @@
+package org.openhab.binding.irobot.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openhab.binding.irobot.internal.RawMQTT;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Decoding of the password reply, which is polled for while pairing
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PasswdBenchmark {
+
+    private static final byte MESSAGE = (byte) 0xF0;
+    private static final int MAGIC = 0x293bccef;
+    private static final String PASSWORD = ":1:1583082000:AbCdEfGhIjKlMnOp";
+
+    private RawMQTT.Packet packet;
+
+    @Setup
+    public void setup() {
+        byte[] password = PASSWORD.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer payload = ByteBuffer.allocate(5 + password.length).order(ByteOrder.LITTLE_ENDIAN);
+
+        payload.putInt(MAGIC);
+        payload.put((byte) 0); // Status: OK
+        payload.put(password);
+        packet = new RawMQTT.Packet(MESSAGE, payload.array());
+    }
+
+    @Benchmark
+    public String decodePassword() {
+        RawMQTT.PasswdPacket passwd = new RawMQTT.PasswdPacket(packet);
+
+        return passwd.isValidPasswdPacket() && passwd.getMagic() == MAGIC ? passwd.getPassword() : null;
+    }
+}
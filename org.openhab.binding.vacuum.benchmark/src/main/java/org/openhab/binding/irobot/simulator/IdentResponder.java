@@ -0,0 +1,95 @@
+package org.openhab.binding.irobot.simulator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+// Answers UDP IDENT probes ("irobotmcs" on port 5678) on behalf of all
+// simulated robots. Every robot has its own address, and replies must come
+// from it, so there's a channel per robot, all served by a single thread.
+public class IdentResponder implements Runnable, Closeable {
+
+    public static final int PORT = 5678;
+    private static final byte[] PROBE = "irobotmcs".getBytes(StandardCharsets.US_ASCII);
+
+    private final Selector selector;
+    private final SimulatorStatistics stats;
+
+    public IdentResponder(Collection<VirtualRobot> robots, SimulatorStatistics stats) throws IOException {
+        this.stats = stats;
+        selector = Selector.open();
+
+        try {
+            for (VirtualRobot robot : robots) {
+                DatagramChannel channel = DatagramChannel.open();
+
+                channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                channel.configureBlocking(false);
+                channel.bind(new InetSocketAddress(robot.getAddress(), PORT));
+                channel.register(selector, SelectionKey.OP_READ, robot);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void run() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+
+        try {
+            while (selector.isOpen()) {
+                selector.select();
+                if (!selector.isOpen()) {
+                    break;
+                }
+
+                for (SelectionKey key : selector.selectedKeys()) {
+                    DatagramChannel channel = (DatagramChannel) key.channel();
+                    VirtualRobot robot = (VirtualRobot) key.attachment();
+                    SocketAddress from;
+
+                    buffer.clear();
+                    while ((from = channel.receive(buffer)) != null) {
+                        buffer.flip();
+                        if (isProbe(buffer)) {
+                            stats.identProbes.increment();
+                            channel.send(ByteBuffer.wrap(robot.getIdentReply()), from);
+                        }
+                        buffer.clear();
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException e) {
+            if (selector.isOpen()) {
+                System.err.println("IDENT responder failed: " + e);
+            }
+        }
+    }
+
+    private static boolean isProbe(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.remaining()];
+
+        buffer.get(data);
+        return Arrays.equals(data, PROBE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+}
@@ -0,0 +1,277 @@
+package org.openhab.binding.irobot.simulator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// A single client connection to a simulated robot. Implements just as much
+// of MQTT 3.1.1 as the binding needs: CONNECT with username/password check,
+// SUBSCRIBE, PINGREQ, PUBLISH at QoS 0 and 1 and DISCONNECT. In addition,
+// answers iRobot's proprietary password request (message type 0xF0).
+public class MqttSession implements Runnable {
+
+    private static final int CONNECT = 0x10;
+    private static final int CONNACK = 0x20;
+    private static final int PUBLISH = 0x30;
+    private static final int PUBACK = 0x40;
+    private static final int SUBSCRIBE = 0x80;
+    private static final int SUBACK = 0x90;
+    private static final int PINGREQ = 0xC0;
+    private static final int PINGRESP = 0xD0;
+    private static final int DISCONNECT = 0xE0;
+    private static final int PASSWORD = 0xF0;
+
+    private static final int PASSWORD_MAGIC = 0x293bccef;
+    private static final int CONNACK_NOT_AUTHORIZED = 5;
+    private static final int MAX_PACKET_SIZE = 65536;
+
+    private final VirtualRobot robot;
+    private final Socket socket;
+    private final ScheduledExecutorService scheduler;
+    private final long updatePeriod; // In microseconds, 0 for no updates
+    private final boolean pairing;
+    private final SimulatorStatistics stats;
+    private final OutputStream out;
+    private ScheduledFuture<?> updates;
+    private boolean connected = false;
+
+    public MqttSession(VirtualRobot robot, Socket socket, ScheduledExecutorService scheduler, long updatePeriod,
+            boolean pairing, SimulatorStatistics stats) throws IOException {
+        this.robot = robot;
+        this.socket = socket;
+        this.scheduler = scheduler;
+        this.updatePeriod = updatePeriod;
+        this.pairing = pairing;
+        this.stats = stats;
+        out = socket.getOutputStream();
+    }
+
+    @Override
+    public void run() {
+        stats.sessions.incrementAndGet();
+        try {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+
+            while (true) {
+                int header = in.read();
+
+                if (header < 0) {
+                    break;
+                }
+
+                byte[] body = new byte[readRemainingLength(in)];
+
+                in.readFully(body);
+                if (!process(header, body)) {
+                    break;
+                }
+            }
+        } catch (EOFException e) {
+            // Client has gone
+        } catch (IOException e) {
+            if (!socket.isClosed()) {
+                System.err.println("Robot " + robot.getIndex() + ": " + e);
+            }
+        } finally {
+            close();
+            stats.sessions.decrementAndGet();
+        }
+    }
+
+    public void close() {
+        if (updates != null) {
+            updates.cancel(false);
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing to do
+        }
+    }
+
+    private boolean process(int header, byte[] body) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+
+        switch (header & 0xF0) {
+            case PASSWORD:
+                stats.passwordRequests.increment();
+                // The real robot only answers when its HOME button is held
+                if (pairing) {
+                    sendPassword();
+                }
+                return true;
+            case CONNECT:
+                return connect(buffer);
+            case SUBSCRIBE:
+                if (connected) {
+                    subscribe(buffer);
+                }
+                return connected;
+            case PUBLISH:
+                if (connected) {
+                    receive(header, buffer);
+                }
+                return connected;
+            case PINGREQ:
+                send(PINGRESP, new byte[0]);
+                return true;
+            case DISCONNECT:
+                return false;
+            default:
+                return true; // Ignore everything else
+        }
+    }
+
+    private boolean connect(ByteBuffer buffer) throws IOException {
+        readString(buffer); // Protocol name
+        buffer.get(); // Protocol level
+
+        int flags = buffer.get() & 0xFF;
+
+        buffer.getShort(); // Keep alive
+        readString(buffer); // Client ID
+        if ((flags & 0x04) != 0) {
+            readString(buffer); // Will topic
+            readString(buffer); // Will message
+        }
+
+        String username = (flags & 0x80) != 0 ? readString(buffer) : null;
+        String password = (flags & 0x40) != 0 ? readString(buffer) : null;
+
+        connected = robot.getBlid().equals(username) && robot.getPassword().equals(password);
+        if (connected) {
+            stats.connects.increment();
+        } else {
+            stats.authFailures.increment();
+        }
+
+        send(CONNACK, new byte[] { 0, (byte) (connected ? 0 : CONNACK_NOT_AUTHORIZED) });
+        return connected;
+    }
+
+    private void subscribe(ByteBuffer buffer) throws IOException {
+        int packetId = buffer.getShort() & 0xFFFF;
+        ByteArrayOutputStream ack = new ByteArrayOutputStream();
+
+        ack.write(packetId >> 8);
+        ack.write(packetId);
+        while (buffer.hasRemaining()) {
+            readString(buffer);
+            buffer.get(); // Requested QoS
+            ack.write(0); // Granted QoS 0
+        }
+        send(SUBACK, ack.toByteArray());
+
+        // Just like the real robot, report everything right away, then keep reporting changes
+        for (byte[] message : robot.getShadow()) {
+            publish(message);
+        }
+
+        if (updatePeriod > 0 && updates == null) {
+            updates = scheduler.scheduleAtFixedRate(this::publishUpdate, updatePeriod, updatePeriod,
+                    TimeUnit.MICROSECONDS);
+        }
+    }
+
+    private void receive(int header, ByteBuffer buffer) throws IOException {
+        String topic = readString(buffer);
+        int qos = (header >> 1) & 3;
+
+        if (qos > 0) {
+            int packetId = buffer.getShort() & 0xFFFF;
+
+            send(PUBACK, new byte[] { (byte) (packetId >> 8), (byte) packetId });
+        }
+
+        byte[] payload = new byte[buffer.remaining()];
+
+        buffer.get(payload);
+        stats.received.increment();
+        for (byte[] response : robot.apply(topic, payload)) {
+            publish(response);
+        }
+    }
+
+    private void publishUpdate() {
+        try {
+            publish(robot.nextUpdate());
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    private void publish(byte[] payload) throws IOException {
+        byte[] topic = robot.getTopic().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(2 + topic.length + payload.length);
+
+        body.putShort((short) topic.length);
+        body.put(topic);
+        body.put(payload);
+        send(PUBLISH, body.array());
+        stats.published.increment();
+    }
+
+    private void sendPassword() throws IOException {
+        byte[] password = robot.getPassword().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(5 + password.length).order(ByteOrder.LITTLE_ENDIAN);
+
+        body.putInt(PASSWORD_MAGIC);
+        body.put((byte) 0); // Status: OK
+        body.put(password);
+        send(PASSWORD, body.array());
+    }
+
+    private void send(int type, byte[] body) throws IOException {
+        ByteArrayOutputStream packet = new ByteArrayOutputStream(body.length + 5);
+        int length = body.length;
+
+        packet.write(type);
+        do {
+            int b = length & 0x7F;
+
+            length >>>= 7;
+            packet.write(length > 0 ? b | 0x80 : b);
+        } while (length > 0);
+        packet.write(body, 0, body.length);
+
+        // Updates are sent from the scheduler, responses from the reader thread
+        synchronized (out) {
+            packet.writeTo(out);
+            out.flush();
+        }
+    }
+
+    private static int readRemainingLength(DataInputStream in) throws IOException {
+        int length = 0;
+
+        for (int shift = 0; shift < 28; shift += 7) {
+            int b = in.readUnsignedByte();
+
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (length > MAX_PACKET_SIZE) {
+                    throw new IOException("Packet too large: " + length);
+                }
+                return length;
+            }
+        }
+
+        throw new IOException("Malformed remaining length");
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.getShort() & 0xFFFF];
+
+        buffer.get(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+}
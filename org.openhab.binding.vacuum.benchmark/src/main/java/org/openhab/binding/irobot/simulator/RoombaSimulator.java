@@ -0,0 +1,221 @@
+package org.openhab.binding.irobot.simulator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+
+import org.openhab.binding.irobot.benchmark.Corpus;
+
+// Emulates any number of Roomba robots on a single machine, for load testing
+// of the binding. Every robot gets its own loopback address (127.0.1.1,
+// 127.0.1.2, ...), since the protocol uses fixed ports: IDENT on UDP 5678
+// and MQTT over TLS on 8883. Loopback addresses other than 127.0.0.1 work
+// out of the box on Linux; other systems need aliases on the loopback
+// interface.
+//
+// Usage: RoombaSimulator [options]
+// --robots N         number of robots, default 1
+// --address A        address of the first robot, default 127.0.1.1
+// --rate R           updates per second per robot, default 1; 0 for none
+// --password P       password of all robots
+// --no-pairing       don't answer password requests
+// --script FILE      replay messages from a corpus file instead of random updates
+// --keystore FILE    keystore with server certificate; generated with keytool if omitted
+// --storepass P      keystore password
+// --seed S           seed for random updates
+public class RoombaSimulator {
+
+    private static final int MQTT_PORT = 8883;
+    private static final int REPORT_INTERVAL = 10; // In seconds
+
+    private int robotCount = 1;
+    private String firstAddress = "127.0.1.1";
+    private double rate = 1;
+    private String password = ":1:1583082000:SimulatedRobot";
+    private boolean pairing = true;
+    private String script = null;
+    private String keystore = null;
+    private String storepass = "simulator";
+    private long seed = 0;
+
+    private final SimulatorStatistics stats = new SimulatorStatistics();
+    private final ExecutorService threads = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "simulator");
+
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4);
+
+    public static void main(String[] args) throws Exception {
+        RoombaSimulator simulator = new RoombaSimulator();
+
+        simulator.parseArgs(args);
+        simulator.run();
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--robots":
+                    robotCount = Integer.parseInt(args[++i]);
+                    break;
+                case "--address":
+                    firstAddress = args[++i];
+                    break;
+                case "--rate":
+                    rate = Double.parseDouble(args[++i]);
+                    break;
+                case "--password":
+                    password = args[++i];
+                    break;
+                case "--no-pairing":
+                    pairing = false;
+                    break;
+                case "--script":
+                    script = args[++i];
+                    break;
+                case "--keystore":
+                    keystore = args[++i];
+                    break;
+                case "--storepass":
+                    storepass = args[++i];
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+    }
+
+    private void run() throws Exception {
+        List<byte[]> messages = script != null ? loadScript(script) : null;
+        List<VirtualRobot> robots = new ArrayList<>();
+        byte[] base = InetAddress.getByName(firstAddress).getAddress();
+        int first = ((base[2] & 0xFF) << 8) | (base[3] & 0xFF);
+
+        for (int i = 0; i < robotCount; i++) {
+            int n = first + i;
+            InetAddress address = InetAddress
+                    .getByAddress(new byte[] { base[0], base[1], (byte) (n >> 8), (byte) n });
+
+            robots.add(new VirtualRobot(i, address, password, messages, seed));
+        }
+
+        SSLContext tls = createTlsContext();
+        IdentResponder ident = new IdentResponder(robots, stats);
+
+        threads.execute(ident);
+        for (VirtualRobot robot : robots) {
+            SSLServerSocket server = (SSLServerSocket) tls.getServerSocketFactory().createServerSocket(MQTT_PORT,
+                    50, robot.getAddress());
+
+            threads.execute(() -> serve(robot, server));
+        }
+
+        System.out.println("Simulating " + robotCount + " robots at " + robots.get(0).getAddress().getHostAddress()
+                + " - " + robots.get(robotCount - 1).getAddress().getHostAddress() + ", password " + password);
+        for (VirtualRobot robot : robots) {
+            System.out.println("  " + robot.getAddress().getHostAddress() + " BLID " + robot.getBlid());
+        }
+
+        scheduler.scheduleAtFixedRate(() -> System.out.println(stats.report()), REPORT_INTERVAL, REPORT_INTERVAL,
+                TimeUnit.SECONDS);
+        Thread.currentThread().join();
+    }
+
+    // Like the real robot, accepts only one client at a time; a new one kicks out the old one
+    private void serve(VirtualRobot robot, SSLServerSocket server) {
+        long period = rate > 0 ? (long) (TimeUnit.SECONDS.toMicros(1) / rate) : 0;
+        MqttSession current = null;
+
+        try {
+            while (true) {
+                Socket socket = server.accept();
+
+                socket.setTcpNoDelay(true);
+                if (current != null) {
+                    current.close();
+                }
+                current = new MqttSession(robot, socket, scheduler, period, pairing, stats);
+                threads.execute(current);
+            }
+        } catch (IOException e) {
+            System.err.println("Robot " + robot.getIndex() + " server failed: " + e);
+        }
+    }
+
+    private List<byte[]> loadScript(String name) throws IOException {
+        File file = new File(name);
+
+        if (!file.exists()) {
+            // One of the benchmark corpora
+            return Corpus.load(name);
+        }
+
+        List<byte[]> messages = new ArrayList<>();
+
+        for (String line : Files.readAllLines(file.toPath())) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                messages.add(line.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        return messages;
+    }
+
+    private SSLContext createTlsContext() throws IOException, GeneralSecurityException, InterruptedException {
+        File file;
+
+        if (keystore != null) {
+            file = new File(keystore);
+        } else {
+            // Robots use a self-signed certificate, and the binding accepts anything
+            file = File.createTempFile("roomba-simulator", ".p12");
+            file.delete();
+            file.deleteOnExit();
+
+            String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+            Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "roomba", "-keyalg", "RSA",
+                    "-keysize", "2048", "-dname", "CN=Roomba", "-validity", "365", "-storetype", "PKCS12",
+                    "-keystore", file.getPath(), "-storepass", storepass, "-keypass", storepass).inheritIO().start();
+
+            if (process.waitFor() != 0) {
+                throw new IOException("Failed to generate a certificate with " + keytool);
+            }
+        }
+
+        KeyStore store = KeyStore.getInstance(file.getName().endsWith(".jks") ? "JKS" : "PKCS12");
+
+        try (InputStream in = new FileInputStream(file)) {
+            store.load(in, storepass.toCharArray());
+        }
+
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        SSLContext context = SSLContext.getInstance("TLS");
+
+        kmf.init(store, storepass.toCharArray());
+        context.init(kmf.getKeyManagers(), null, null);
+        return context;
+    }
+}
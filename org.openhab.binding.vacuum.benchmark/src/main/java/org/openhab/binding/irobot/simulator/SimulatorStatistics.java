@@ -0,0 +1,31 @@
+package org.openhab.binding.irobot.simulator;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters for all robots together, printed periodically by the simulator
+public class SimulatorStatistics {
+
+    public final LongAdder identProbes = new LongAdder();
+    public final LongAdder passwordRequests = new LongAdder();
+    public final LongAdder connects = new LongAdder();
+    public final LongAdder authFailures = new LongAdder();
+    public final LongAdder published = new LongAdder();
+    public final LongAdder received = new LongAdder();
+    public final AtomicInteger sessions = new AtomicInteger();
+
+    private long lastPublished = 0;
+    private long lastTime = System.nanoTime();
+
+    public synchronized String report() {
+        long now = System.nanoTime();
+        long total = published.sum();
+        double rate = (total - lastPublished) * 1e9 / Math.max(1, now - lastTime);
+
+        lastPublished = total;
+        lastTime = now;
+        return String.format("sessions=%d connects=%d authFailures=%d identProbes=%d passwordRequests=%d"
+                + " published=%d (%.0f/s) received=%d", sessions.get(), connects.sum(), authFailures.sum(),
+                identProbes.sum(), passwordRequests.sum(), total, rate, received.sum());
+    }
+}
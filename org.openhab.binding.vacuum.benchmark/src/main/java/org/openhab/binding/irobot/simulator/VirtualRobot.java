@@ -0,0 +1,329 @@
+package org.openhab.binding.irobot.simulator;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// State of a single simulated robot. Produces the same kind of messages a
+// Roomba 980 does: the full shadow right after subscription, then a stream of
+// small updates. Updates are either replayed from a script (a corpus file,
+// one message per line) or generated randomly: the robot sits on the dock,
+// now and then starts a mission, drives around reporting its pose, then goes
+// back. Commands and settings deltas from the client are applied and echoed
+// back as reported state, like the real robot does.
+public class VirtualRobot {
+
+    public static final String TOPIC_PREFIX = "$aws/things/";
+    public static final String TOPIC_SUFFIX = "/shadow/update";
+
+    private final int index;
+    private final InetAddress address;
+    private final String blid;
+    private final String password;
+    private final String topic;
+    private final List<byte[]> script;
+    private final Random random;
+    private int scriptPos = 0;
+
+    private String cycle = "none";
+    private String phase = "charge";
+    private int nMssn = 1;
+    private int mssnM = 0;
+    private int sqft = 0;
+    private int missionUpdates = 0;
+    private int missionLength = 0;
+    private int battery = 100;
+    private int rssi = -55;
+    private int snr = 33;
+    private int x = 0;
+    private int y = 0;
+    private int theta = 0;
+    private final JSONObject settings = new JSONObject();
+    private JSONObject schedule;
+    private JSONObject lastCommand;
+
+    public VirtualRobot(int index, InetAddress address, String password, List<byte[]> script, long seed) {
+        this.index = index;
+        this.address = address;
+        this.blid = String.format("3168820480%06d", index);
+        this.password = password;
+        this.topic = TOPIC_PREFIX + blid + TOPIC_SUFFIX;
+        this.script = script;
+        this.random = new Random(seed + index);
+
+        settings.put("carpetBoost", true);
+        settings.put("vacHigh", false);
+        settings.put("openOnly", false);
+        settings.put("noAutoPasses", false);
+        settings.put("twoPass", false);
+        settings.put("binPause", true);
+
+        schedule = new JSONObject();
+        schedule.put("cycle", new JSONArray("[\"none\",\"start\",\"start\",\"start\",\"start\",\"none\",\"none\"]"));
+        schedule.put("h", new JSONArray("[9,12,12,12,12,12,9]"));
+        schedule.put("m", new JSONArray("[0,0,0,0,0,0,0]"));
+
+        lastCommand = new JSONObject();
+        lastCommand.put("command", "dock");
+        lastCommand.put("time", System.currentTimeMillis() / 1000);
+        lastCommand.put("initiator", "localApp");
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public InetAddress getAddress() {
+        return address;
+    }
+
+    public String getBlid() {
+        return blid;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public byte[] getIdentReply() {
+        JSONObject ident = new JSONObject();
+        JSONObject cap = new JSONObject();
+
+        cap.put("pose", 1);
+        cap.put("ota", 2);
+        cap.put("multiPass", 2);
+        cap.put("carpetBoost", 1);
+        cap.put("pp", 1);
+        cap.put("binFullDetect", 1);
+        cap.put("maps", 1);
+        cap.put("edge", 1);
+        cap.put("eco", 1);
+
+        ident.put("ver", "3");
+        ident.put("hostname", "Roomba-" + blid);
+        ident.put("robotname", "Simulated " + index);
+        ident.put("ip", address.getHostAddress());
+        ident.put("mac", String.format("02:00:00:00:%02x:%02x", (index >> 8) & 0xFF, index & 0xFF));
+        ident.put("sw", "v2.4.6-3");
+        ident.put("sku", "R981040");
+        ident.put("nc", 0);
+        ident.put("proto", "mqtt");
+        ident.put("cap", cap);
+        return ident.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Complete state, split into several messages just like the real robot does
+    public synchronized List<byte[]> getShadow() {
+        List<byte[]> messages = new ArrayList<>();
+        JSONObject versions = new JSONObject();
+
+        versions.put("softwareVer", "v2.4.6-3");
+        versions.put("navSwVer", "01.12.01#1");
+        versions.put("wifiSwVer", "20992");
+        versions.put("mobilityVer", "5806");
+        versions.put("bootloaderVer", "4042");
+        versions.put("umiVer", "6");
+        versions.put("name", "Simulated " + index);
+
+        JSONObject status = new JSONObject();
+
+        status.put("cleanMissionStatus", missionStatus());
+        status.put("batPct", battery);
+        status.put("bin", new JSONObject().put("present", true).put("full", false));
+        status.put("pose", pose());
+        status.put("lastCommand", lastCommand);
+
+        messages.add(reported(versions));
+        messages.add(reported(status));
+        messages.add(reported(new JSONObject(settings.toString())));
+        messages.add(reported(new JSONObject().put("cleanSchedule", schedule)));
+        messages.add(reported(signal()));
+        return messages;
+    }
+
+    public synchronized byte[] nextUpdate() {
+        if (script != null) {
+            byte[] message = script.get(scriptPos);
+
+            scriptPos = (scriptPos + 1) % script.size();
+            return message;
+        }
+
+        JSONObject update = new JSONObject();
+
+        if (cycle.equals("none")) {
+            // On the dock, occasionally starting a mission on its own
+            if (random.nextInt(200) == 0) {
+                startMission("schedule");
+                update.put("cleanMissionStatus", missionStatus());
+            } else if (random.nextBoolean()) {
+                update = signal();
+            } else {
+                battery = Math.min(100, battery + 1);
+                update.put("batPct", battery);
+            }
+        } else {
+            missionUpdates++;
+
+            int dice = random.nextInt(10);
+
+            if (missionUpdates >= missionLength) {
+                endMission();
+                update.put("cleanMissionStatus", missionStatus());
+                update.put("pose", pose());
+            } else if (dice < 7) {
+                move();
+                update.put("pose", pose());
+            } else if (dice == 7) {
+                mssnM = missionUpdates / 60;
+                sqft = missionUpdates / 20;
+                update.put("cleanMissionStatus", missionStatus());
+            } else if (dice == 8) {
+                battery = Math.max(0, battery - 1);
+                update.put("batPct", battery);
+            } else {
+                update = signal();
+            }
+        }
+
+        return reported(update);
+    }
+
+    // Applies a message from the client, returns reported state to publish in response
+    public synchronized List<byte[]> apply(String topic, byte[] payload) {
+        List<byte[]> responses = new ArrayList<>();
+
+        try {
+            JSONObject request = new JSONObject(new String(payload, StandardCharsets.UTF_8));
+
+            if (topic.equals("cmd")) {
+                applyCommand(request);
+                responses.add(reported(new JSONObject().put("cleanMissionStatus", missionStatus())
+                        .put("lastCommand", lastCommand)));
+            } else if (topic.equals("delta")) {
+                JSONObject state = request.getJSONObject("state");
+
+                for (String key : state.keySet()) {
+                    if (key.equals("cleanSchedule")) {
+                        schedule = state.getJSONObject(key);
+                    } else {
+                        settings.put(key, state.get(key));
+                    }
+                }
+                responses.add(reported(state));
+            }
+        } catch (JSONException e) {
+            // The real robot silently ignores garbage, so do we
+        }
+
+        return responses;
+    }
+
+    private void applyCommand(JSONObject request) {
+        String command = request.getString("command");
+
+        lastCommand = request;
+        switch (command) {
+            case "start":
+            case "clean":
+                startMission(request.optString("initiator", "localApp"));
+                break;
+            case "spot":
+                startMission(request.optString("initiator", "localApp"));
+                cycle = "spot";
+                break;
+            case "pause":
+                if (!cycle.equals("none")) {
+                    phase = "stop";
+                }
+                break;
+            case "resume":
+                if (!cycle.equals("none")) {
+                    phase = "run";
+                }
+                break;
+            case "dock":
+                if (!cycle.equals("none")) {
+                    phase = "hmUsrDock";
+                    missionLength = missionUpdates + 20;
+                }
+                break;
+            case "stop":
+                endMission();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void startMission(String initiator) {
+        if (!cycle.equals("none")) {
+            return;
+        }
+        cycle = "clean";
+        phase = "run";
+        nMssn++;
+        mssnM = 0;
+        sqft = 0;
+        missionUpdates = 0;
+        missionLength = 200 + random.nextInt(400);
+        lastCommand = new JSONObject().put("command", "start").put("time", System.currentTimeMillis() / 1000)
+                .put("initiator", initiator);
+    }
+
+    private void endMission() {
+        cycle = "none";
+        phase = "charge";
+        x = 0;
+        y = 0;
+        theta = 0;
+    }
+
+    private void move() {
+        theta = Math.floorMod(theta + random.nextInt(61) - 30 + 180, 360) - 180;
+        x += (int) Math.round(10 * Math.cos(Math.toRadians(theta)));
+        y += (int) Math.round(10 * Math.sin(Math.toRadians(theta)));
+    }
+
+    private JSONObject missionStatus() {
+        JSONObject status = new JSONObject();
+
+        status.put("cycle", cycle);
+        status.put("phase", phase);
+        status.put("expireM", 0);
+        status.put("rechrgM", 0);
+        status.put("error", 0);
+        status.put("notReady", 0);
+        status.put("mssnM", mssnM);
+        status.put("sqft", sqft);
+        status.put("initiator", lastCommand.optString("initiator", "localApp"));
+        status.put("nMssn", nMssn);
+        return status;
+    }
+
+    private JSONObject pose() {
+        return new JSONObject().put("theta", theta).put("point", new JSONObject().put("x", x).put("y", y));
+    }
+
+    private JSONObject signal() {
+        rssi = Math.max(-90, Math.min(-30, rssi + random.nextInt(3) - 1));
+        snr = Math.max(5, Math.min(60, snr + random.nextInt(3) - 1));
+        return new JSONObject().put("signal", new JSONObject().put("rssi", rssi).put("snr", snr));
+    }
+
+    private static byte[] reported(JSONObject reported) {
+        JSONObject state = new JSONObject().put("reported", reported);
+
+        return new JSONObject().put("state", state).toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
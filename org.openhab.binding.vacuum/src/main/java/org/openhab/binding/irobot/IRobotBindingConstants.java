@@ -35,11 +35,28 @@ public class IRobotBindingConstants {
     public final static String CHANNEL_SCHED_SWITCH_PREFIX = "sched_";
     public final static String[] CHANNEL_SCHED_SWITCH = { "sched_sun", "sched_mon", "sched_tue", "sched_wed",
             "sched_thu", "sched_fri", "sched_sat" };
+    public final static String[] CHANNEL_SCHED_TIME = { "sched_sun_time", "sched_mon_time", "sched_tue_time",
+            "sched_wed_time", "sched_thu_time", "sched_fri_time", "sched_sat_time" };
     public final static String CHANNEL_SCHEDULE = "schedule";
     public final static String CHANNEL_EDGE_CLEAN = "edge_clean";
     public final static String CHANNEL_ALWAYS_FINISH = "always_finish";
     public final static String CHANNEL_POWER_BOOST = "power_boost";
     public final static String CHANNEL_CLEAN_PASSES = "clean_passes";
+    public final static String CHANNEL_CLEAN_REGIONS = "clean_regions";
+    public final static String CHANNEL_LAST_MISSION_AREA = "last_mission_area";
+    public final static String CHANNEL_LAST_MISSION_DURATION = "last_mission_duration";
+    public final static String CHANNEL_AVG_MISSION_AREA = "avg_mission_area";
+    public final static String CHANNEL_AVG_MISSION_DURATION = "avg_mission_duration";
+    public final static String CHANNEL_POSE_X = "pose_x";
+    public final static String CHANNEL_POSE_Y = "pose_y";
+    public final static String CHANNEL_POSE_THETA = "pose_theta";
+    public final static String CHANNEL_STAT_MESSAGE_RATE = "stat_message_rate";
+    public final static String CHANNEL_STAT_PARSE_TIME = "stat_parse_time";
+    public final static String CHANNEL_STAT_CONNECT_TIME = "stat_connect_time";
+    public final static String CHANNEL_STAT_RECONNECTS = "stat_reconnects";
+    public final static String CHANNEL_STAT_PUBLISH_FAILURES = "stat_publish_failures";
+    public final static String CHANNEL_STAT_UPDATES_SUPPRESSED = "stat_updates_suppressed";
+    public final static String CHANNEL_STAT_STALL_DETECT_TIME = "stat_stall_detect_time";
 
     public final static String CMD_CLEAN = "clean";
     public final static String CMD_SPOT = "spot";
@@ -58,4 +75,7 @@ public class IRobotBindingConstants {
     public final static String PASSES_AUTO = "auto";
     public final static String PASSES_1 = "1";
     public final static String PASSES_2 = "2";
+
+    // Known maps and regions, see RegionCatalog
+    public final static String PROPERTY_REGIONS = "regions";
 }
@@ -1,15 +1,16 @@
 package org.openhab.binding.irobot.discovery;
 
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
+import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.smarthome.config.discovery.AbstractDiscoveryService;
 import org.eclipse.smarthome.config.discovery.DiscoveryResult;
 import org.eclipse.smarthome.config.discovery.DiscoveryResultBuilder;
@@ -18,10 +19,12 @@ import org.eclipse.smarthome.core.net.NetUtil;
 import org.eclipse.smarthome.core.thing.ThingUID;
 import org.json.JSONException;
 import org.openhab.binding.irobot.IRobotBindingConstants;
+import org.openhab.binding.irobot.internal.IdentCache;
 import org.openhab.binding.irobot.internal.IdentProtocol;
 import org.openhab.binding.irobot.internal.IdentProtocol.IdentData;
 import org.openhab.binding.irobot.roomba.RoombaConfiguration;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,14 +32,25 @@ import org.slf4j.LoggerFactory;
 public class IRobotDiscoveryService extends AbstractDiscoveryService {
 
     private final static Logger logger = LoggerFactory.getLogger(IRobotDiscoveryService.class);
+    private final static long SCAN_TIMEOUT = 1000; // One second for all interfaces together
     private final Runnable scanner;
     private ScheduledFuture<?> backgroundFuture;
+    private @Nullable IdentCache identCache;
 
     public IRobotDiscoveryService() {
         super(Collections.singleton(IRobotBindingConstants.THING_TYPE_ROOMBA), 30, true);
         scanner = createScanner();
     }
 
+    @Reference
+    protected void setIdentCache(IdentCache identCache) {
+        this.identCache = identCache;
+    }
+
+    protected void unsetIdentCache(IdentCache identCache) {
+        this.identCache = null;
+    }
+
     @Override
     protected void startBackgroundDiscovery() {
         logger.trace("Starting background discovery");
@@ -67,17 +81,11 @@ public class IRobotDiscoveryService extends AbstractDiscoveryService {
     private Runnable createScanner() {
         return () -> {
             long timestampOfLastScan = getTimestampOfLastScan();
-            for (InetAddress broadcastAddress : getBroadcastAddresses()) {
-                logger.debug("Starting broadcast for {}", broadcastAddress.toString());
-
-                DatagramSocket socket;
-                try {
-                    socket = IdentProtocol.sendRequest(broadcastAddress);
-                    while (receivePacketAndDiscover(socket)) {
-                    }
-                } catch (Exception e) {
-                    logger.debug("Error sending broadcast: {}", e.toString());
-                }
+
+            try {
+                IdentProtocol.scan(getBroadcastAddresses(), SCAN_TIMEOUT, this::discover);
+            } catch (IOException e) {
+                logger.debug("Error sending broadcast: {}", e.toString());
             }
 
             removeOlderResults(timestampOfLastScan);
@@ -98,35 +106,31 @@ public class IRobotDiscoveryService extends AbstractDiscoveryService {
         return addresses;
     }
 
-    private boolean receivePacketAndDiscover(DatagramSocket socket) {
-        DatagramPacket incomingPacket;
-
-        try {
-            incomingPacket = IdentProtocol.receiveResponse(socket);
-        } catch (Exception e) {
-            // This is not really an error, eventually we get a timeout
-            // due to a loop in the caller
-            return false;
-        }
-
-        String host = incomingPacket.getAddress().toString().substring(1);
+    private void discover(InetAddress address, byte[] data, int length) {
+        String host = address.getHostAddress();
 
         logger.debug("Received reply from {}", host);
-        logger.trace(new String(incomingPacket.getData()));
+        logger.trace(new String(data, 0, length, StandardCharsets.UTF_8));
 
         IdentProtocol.IdentData ident;
 
         try {
-            ident = new IdentProtocol.IdentData(incomingPacket);
+            ident = new IdentProtocol.IdentData(data, length);
         } catch (JSONException e) {
             logger.error("Malformed JSON reply!");
-            return true;
+            return;
         }
 
         // This check comes from Roomba980-Python
         if (ident.ver < IdentData.MIN_SUPPORTED_VERSION) {
             logger.info("Found unsupported iRobot \"{}\" version {} at {}", ident.robotname, ident.ver, host);
-            return true;
+            return;
+        }
+
+        IdentCache cache = identCache;
+
+        if (cache != null) {
+            cache.put(host, ident);
         }
 
         if (ident.product.equals(IdentData.PRODUCT_ROOMBA)) {
@@ -137,7 +141,5 @@ public class IRobotDiscoveryService extends AbstractDiscoveryService {
 
             thingDiscovered(result);
         }
-
-        return true;
     }
 }
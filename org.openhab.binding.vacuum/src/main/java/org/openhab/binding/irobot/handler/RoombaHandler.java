@@ -9,18 +9,31 @@ package org.openhab.binding.irobot.handler;
 
 import static org.openhab.binding.irobot.IRobotBindingConstants.*;
 
+import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
-import java.util.Hashtable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.smarthome.config.core.ConfigConstants;
 import org.eclipse.smarthome.config.core.Configuration;
 import org.eclipse.smarthome.core.library.types.DecimalType;
 import org.eclipse.smarthome.core.library.types.OnOffType;
@@ -33,17 +46,42 @@ import org.eclipse.smarthome.core.thing.binding.BaseThingHandler;
 import org.eclipse.smarthome.core.types.Command;
 import org.eclipse.smarthome.core.types.RefreshType;
 import org.eclipse.smarthome.core.types.State;
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.openhab.binding.irobot.internal.AdmissionController;
+import org.openhab.binding.irobot.internal.ChannelStateStore;
+import org.openhab.binding.irobot.internal.IdentCache;
 import org.openhab.binding.irobot.internal.IdentProtocol;
 import org.openhab.binding.irobot.internal.IdentProtocol.IdentData;
+import org.openhab.binding.irobot.internal.JsonReader;
+import org.openhab.binding.irobot.internal.KeyedSerialExecutor;
+import org.openhab.binding.irobot.internal.PasswordRequester;
+import org.openhab.binding.irobot.internal.PropertyCache;
 import org.openhab.binding.irobot.internal.RawMQTT;
+import org.openhab.binding.irobot.internal.ReconnectPolicy;
+import org.openhab.binding.irobot.roomba.ChannelThrottle;
+import org.openhab.binding.irobot.roomba.CleanSchedule;
+import org.openhab.binding.irobot.roomba.CommandQueue;
+import org.openhab.binding.irobot.roomba.DeltaCoalescer;
+import org.openhab.binding.irobot.roomba.MissionHistory;
+import org.openhab.binding.irobot.roomba.MissionStatus;
+import org.openhab.binding.irobot.roomba.MissionTracker;
+import org.openhab.binding.irobot.roomba.Pose;
+import org.openhab.binding.irobot.roomba.PoseFilter;
+import org.openhab.binding.irobot.roomba.RegionCatalog;
+import org.openhab.binding.irobot.roomba.RoombaChannel;
 import org.openhab.binding.irobot.roomba.RoombaConfiguration;
+import org.openhab.binding.irobot.roomba.RoombaMessagePipeline;
+import org.openhab.binding.irobot.roomba.RoombaMetrics;
 import org.openhab.binding.irobot.roomba.RoombaMqttBrokerConnection;
+import org.openhab.binding.irobot.roomba.ShadowState;
+import org.openhab.binding.irobot.roomba.TopicRouter;
+import org.openhab.binding.irobot.roomba.TrajectoryLog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.netty.util.Timer;
+
 /**
  * The {@link RoombaHandler} is responsible for handling commands, which are
  * sent to one of the channels.
@@ -53,29 +91,97 @@ import org.slf4j.LoggerFactory;
 public class RoombaHandler extends BaseThingHandler {
 
     private final Logger logger = LoggerFactory.getLogger(RoombaHandler.class);
-    private final ExecutorService singleThread = Executors.newSingleThreadExecutor();
-    private static final int reconnectDelay = 5; // In seconds
+    private final Executor serialQueue;
+    // Drops tasks of a past lifecycle, see execute()
+    private final Executor serialExecutor;
+    // Identifies the lifecycle, from initialize() till dispose(); null when disposed or removed
+    private volatile @Nullable Object lifecycle;
+    private final IdentCache identCache;
+    private final @Nullable PasswordRequester passwords;
+    private final @Nullable AdmissionController admission;
+    private final @Nullable Timer timer;
+    private static final int passwordRetryDelay = 2; // In seconds
+    private static final int pairingWindow = 30; // In seconds
+    private static final int messageQueueSize = 64;
+    private static final int commandQueueSize = 32;
+    private static final int missionHistorySize = 256;
+    private static final int trajectoryFilesKept = 20;
     private @Nullable Future<?> reconnectReq;
+    private ReconnectPolicy reconnectPolicy;
+    private DeltaCoalescer deltas;
+    private CommandQueue commands;
+    private final MissionTracker missionTracker = new MissionTracker();
+    private volatile @Nullable MissionHistory missionHistory;
+    private final Pose pose = new Pose();
+    private PoseFilter poseFilter;
+    private @Nullable TrajectoryLog trajectory;
+    private Map<String, Integer> capabilities = Collections.emptyMap();
     private RoombaConfiguration config;
     private String blid = null;
     protected RoombaMqttBrokerConnection connection;
-    private Hashtable<String, State> lastState = new Hashtable<String, State>();
-    private JSONObject lastSchedule = null;
-    private boolean auto_passes = true;
-    private Boolean two_passes = null;
-    private boolean carpet_boost = true;
-    private Boolean vac_high = null;
-    private boolean isPaused = false;
-
-    public RoombaHandler(Thing thing) {
+    private final ChannelStateStore<RoombaChannel> lastState = new ChannelStateStore<>(RoombaChannel.class);
+    private final PropertyCache properties = new PropertyCache();
+    private final RoombaMessagePipeline messages;
+    private final RegionCatalog regions = new RegionCatalog();
+    private volatile @Nullable TopicRouter router;
+    private Map<RoombaChannel, ChannelThrottle> throttles = Collections.emptyMap();
+    private final ShadowState shadow = new ShadowState();
+    // Reported state of the message being processed, to be merged into the shadow
+    private final Map<String, Object> fragment = new HashMap<>();
+    private final RoombaMetrics metrics = new RoombaMetrics();
+    private volatile long connectStart;
+    private @Nullable Future<?> statsJob;
+    private @Nullable CompletableFuture<String> pairing;
+    private int pairingAttempts;
+    // Held from admission until connected or failed
+    private volatile AdmissionController.@Nullable Ticket ticket;
+    // Address being connected to, until the connection is up
+    private volatile @Nullable String connectAddress;
+
+    public RoombaHandler(Thing thing, KeyedSerialExecutor serialExecutors, IdentCache identCache,
+            @Nullable PasswordRequester passwords, @Nullable AdmissionController admission, @Nullable Timer timer) {
         super(thing);
+        this.identCache = identCache;
+        this.passwords = passwords;
+        this.admission = admission;
+        this.timer = timer;
+        // In order not to mess up our connection state we need to make sure
+        // that connection management and message processing never run
+        // concurrently. All of it goes through a serial executor, keyed
+        // by our thing, so this also holds across handler re-creation.
+        serialQueue = serialExecutors.getExecutor(thing.getUID().getAsString());
+        serialExecutor = task -> execute(lifecycle, task);
+        messages = new RoombaMessagePipeline(serialExecutor, this::processMessage, messageQueueSize);
+        // Defaults until initialize(), so that processMessage() can be used standalone
+        config = new RoombaConfiguration();
+        poseFilter = new PoseFilter(config.poseInterval, config.poseDistance, config.poseAngle);
     }
 
     @Override
     public void initialize() {
         logger.trace("initialize()");
         config = getConfigAs(RoombaConfiguration.class);
+        reconnectPolicy = new ReconnectPolicy(TimeUnit.SECONDS.toMillis(config.reconnectInitialDelay),
+                TimeUnit.SECONDS.toMillis(config.reconnectMaxDelay),
+                TimeUnit.SECONDS.toMillis(config.reconnectStableTime));
+        commands = new CommandQueue(commandQueueSize, TimeUnit.SECONDS.toMillis(config.commandTtl));
+        deltas = new DeltaCoalescer(scheduler, this::publishDelta, config.commandWindow, config.commandFlushOnIdle);
+        throttles = createThrottles();
+        poseFilter = new PoseFilter(config.poseInterval, config.poseDistance, config.poseAngle);
+        lastState.clear();
+        shadow.clear();
+        // A drain, dropped after dispose(), would leave the pipeline stalled
+        messages.clear();
+        pairingAttempts = 0;
+        lifecycle = new Object();
+        if (config.statsInterval > 0) {
+            // Channel updates belong to the serial executor, like everything else
+            statsJob = scheduler.scheduleWithFixedDelay(() -> serialExecutor.execute(this::reportStatistics),
+                    config.statsInterval, config.statsInterval, TimeUnit.SECONDS);
+        }
         updateStatus(ThingStatus.UNKNOWN);
+        serialExecutor.execute(() -> properties.reset(getThing().getProperties()));
+        serialExecutor.execute(this::openMissionHistory);
         connect();
     }
 
@@ -83,24 +189,58 @@ public class RoombaHandler extends BaseThingHandler {
     public void dispose() {
         logger.trace("dispose()");
 
-        singleThread.execute(() -> {
+        Future<?> stats = statsJob;
+
+        if (stats != null) {
+            stats.cancel(false);
+            statsJob = null;
+        }
+
+        deltas.cancel();
+        for (ChannelThrottle throttle : throttles.values()) {
+            throttle.cancel();
+        }
+        commands.offline();
+        commands.clear();
+        releaseTicket();
+        lifecycle = null;
+        // Not subject to the lifecycle check, it must run anyway
+        serialQueue.execute(() -> {
             if (reconnectReq != null) {
                 reconnectReq.cancel(false);
                 reconnectReq = null;
             }
 
+            cancelPairing();
+
             if (connection != null) {
                 connection.stop();
                 connection = null;
             }
+
+            messages.clear();
+            closeMissionHistory();
+            closeTrajectory();
         });
     }
 
+    @Override
+    public void handleRemoval() {
+        // End the lifecycle first, so that queued messages, which could recreate
+        // the files, are dropped. Queued after anything already running; removal
+        // disposes the handler, so this mustn't depend on the lifecycle.
+        lifecycle = null;
+        serialQueue.execute(this::deleteRecordedData);
+        updateStatus(ThingStatus.REMOVED);
+    }
+
     @Override
     public void handleCommand(ChannelUID channelUID, Command command) {
         String ch = channelUID.getId();
         if (command instanceof RefreshType) {
-            State value = lastState.get(ch);
+            // Refresh is an explicit request, so always publish whatever we have
+            RoombaChannel channel = RoombaChannel.fromId(ch);
+            State value = channel != null ? lastState.get(channel) : null;
 
             if (value != null) {
                 updateState(ch, value);
@@ -114,58 +254,70 @@ public class RoombaHandler extends BaseThingHandler {
                 String cmd = command.toString();
 
                 if (cmd.equals(CMD_CLEAN)) {
-                    cmd = isPaused ? "resume" : "start";
+                    MissionStatus status = shadow.get().get(ShadowState.KEY_MISSION_STATUS, MissionStatus.class);
+
+                    cmd = status != null && status.isPaused() ? "resume" : "start";
                 }
-                         
+
                 JSONObject request = new JSONObject();
 
-		/*
-		Testing room-related messages
-		Region_id 22 is living room. Set all these to null for whole house clean
-        Need to create new strings for additional requests instead of hardcoding, like so:
-        request.put("ordered", order);
-		request.put("pmap_id", mapid);
-		request.put("regions", regionid);
-		request.put("user_pmapv_id", pmapvid);
-		*/
                 request.put("command", cmd);
                 request.put("time", System.currentTimeMillis() / 1000);
                 request.put("initiator", "localApp");
-                request.put("ordered", 1);
-		        request.put("pmap_id", "7BWzb9_ZRNmbNZe4rkE0fw");
-		        request.put("regions", [{"region_id": "22", "type": "rid"}]; //living room
-	        	request.put("user_pmapv_id", "201006T004121");
-                
-                sendRequest("cmd", request);
+                sendCommand(request);
+            }
+        } else if (ch.equals(CHANNEL_CLEAN_REGIONS)) {
+            if (command instanceof StringType) {
+                JSONObject request = new JSONObject();
+
+                request.put("command", "start");
+                request.put("time", System.currentTimeMillis() / 1000);
+                request.put("initiator", "localApp");
+
+                try {
+                    // Everything comes from the catalog, no need to ask the robot
+                    regions.buildCommand(command.toString(), request);
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    logger.warn("Cannot clean regions {}: {}", command, e.getMessage());
+                    return;
+                }
+
+                sendCommand(request);
             }
         } else if (ch.startsWith(CHANNEL_SCHED_SWITCH_PREFIX)) {
-            JSONObject schedule = lastSchedule;
+            CleanSchedule schedule = getSchedule();
 
             // Schedule can only be updated in a bulk, so we have to store current
             // schedule and modify components.
-            if (command instanceof OnOffType && schedule != null && schedule.has("cycle")) {
-                for (int i = 0; i < CHANNEL_SCHED_SWITCH.length; i++) {
-                    if (ch.equals(CHANNEL_SCHED_SWITCH[i])) {
-                        JSONArray cycle = schedule.getJSONArray("cycle");
+            if (schedule == null) {
+                return;
+            }
 
-                        enableCycle(cycle, i, command.equals(OnOffType.ON));
-                        sendSchedule(schedule);
+            for (int i = 0; i < CHANNEL_SCHED_SWITCH.length; i++) {
+                if (command instanceof OnOffType && ch.equals(CHANNEL_SCHED_SWITCH[i])) {
+                    sendSchedule(schedule.withDay(i, command.equals(OnOffType.ON)));
+                    break;
+                } else if (command instanceof StringType && ch.equals(CHANNEL_SCHED_TIME[i])) {
+                    if (!schedule.haveTimes()) {
+                        logger.warn("Robot hasn't reported schedule times, ignoring {} for {}", command, ch);
                         break;
                     }
+                    try {
+                        int[] time = CleanSchedule.parseTime(command.toString());
+
+                        sendSchedule(schedule.withTime(i, time[0], time[1]));
+                    } catch (IllegalArgumentException e) {
+                        logger.warn("Invalid schedule time for {}: {}", ch, command);
+                    }
+                    break;
                 }
             }
         } else if (ch.equals(CHANNEL_SCHEDULE)) {
             if (command instanceof DecimalType) {
                 int bitmask = ((DecimalType) command).intValue();
-                JSONArray cycle = new JSONArray();
-
-                for (int i = 0; i < CHANNEL_SCHED_SWITCH.length; i++) {
-                    enableCycle(cycle, i, (bitmask & (1 << i)) != 0);
-                }
+                CleanSchedule schedule = getSchedule();
 
-                JSONObject schedule = new JSONObject();
-                schedule.put("cycle", cycle);
-                sendSchedule(schedule);
+                sendSchedule(schedule != null ? schedule.withCycleMask(bitmask) : new CleanSchedule(bitmask));
             }
         } else if (ch.equals(CHANNEL_EDGE_CLEAN)) {
             if (command instanceof OnOffType) {
@@ -198,17 +350,30 @@ public class RoombaHandler extends BaseThingHandler {
         }
     }
 
-    private void enableCycle(JSONArray cycle, int i, boolean enable) {
-        cycle.put(i, enable ? "start" : "none");
+    private @Nullable CleanSchedule getSchedule() {
+        return shadow.get().get(ShadowState.KEY_SCHEDULE, CleanSchedule.class);
     }
 
-    private void sendSchedule(JSONObject schedule) {
+    private void sendSchedule(CleanSchedule schedule) {
+        if (schedule.equals(getSchedule())) {
+            return; // Nothing to change
+        }
+
+        // Assume it's accepted, so that several changes in a row accumulate.
+        // The robot will report the actual schedule back anyway.
+        shadow.merge(ShadowState.KEY_SCHEDULE, schedule);
+
         JSONObject state = new JSONObject();
-        state.put("cleanSchedule", schedule);
+        state.put("cleanSchedule", schedule.toJSON());
         sendDelta(state);
     }
 
     private void sendDelta(JSONObject state) {
+        // Several changes in a row are merged into a single message
+        deltas.put(state);
+    }
+
+    private void publishDelta(JSONObject state) {
         // Huge thanks to Dorita980 author(s) for an insight on this
         JSONObject request = new JSONObject();
         request.put("state", state);
@@ -217,35 +382,100 @@ public class RoombaHandler extends BaseThingHandler {
         sendRequest("delta", request);
     }
 
+    private void sendCommand(JSONObject request) {
+        // A rule may change settings and start cleaning right away. Settings,
+        // which are still waiting for the window, must get there first.
+        deltas.flush();
+        sendRequest("cmd", request);
+    }
+
     private void sendRequest(String topic, JSONObject request) {
-        connection.publish(topic, request.toString().getBytes());
+        // If we are offline, the command will wait for the connection
+        commands.send(topic, request.toString().getBytes());
+    }
+
+    public CommandQueue getCommandQueue() {
+        return commands;
     }
 
     private void connect() {
-        // In order not to mess up our connection state we need to make sure
-        // that any two calls are never running concurrently. We use
-        // singleThreadExecutorService for this purpose
-        singleThread.execute(() -> {
+        AdmissionController controller = admission;
+        Object token = lifecycle;
+
+        // A late reconnect would otherwise hold an admission ticket until it expires
+        if (token == null) {
+            return;
+        }
+
+        if (controller == null) {
+            startConnection(token);
+            return;
+        }
+
+        // Robots, which have been paired before, are expected to connect right away
+        releaseTicket();
+        ticket = controller.enqueue(getThing().getUID().getAsString(), config.havePassword(),
+                () -> startConnection(token));
+    }
+
+    // Runs the task on the serial executor, unless its lifecycle is over by then.
+    // Otherwise a late reconnect or throttle task could run after dispose(), or
+    // after initialize() has started over, or even, if the factory has released
+    // the queue in between, concurrently with a new handler's tasks.
+    private void execute(@Nullable Object token, Runnable task) {
+        if (token == null) {
+            return;
+        }
+
+        serialQueue.execute(() -> {
+            if (lifecycle == token) {
+                task.run();
+            }
+        });
+    }
+
+    private void releaseTicket() {
+        AdmissionController.Ticket t = ticket;
+
+        if (t != null) {
+            ticket = null;
+            t.release();
+        }
+    }
+
+    private void startConnection(Object token) {
+        execute(token, () -> {
             String error = null;
+            boolean started = false;
 
             logger.info("Connecting to {}", config.ipaddress);
+            connectStart = System.nanoTime();
 
             try {
                 InetAddress host = InetAddress.getByName(config.ipaddress);
 
+                connectAddress = host.getHostAddress();
                 if (blid == null) {
-                    DatagramSocket identSocket = IdentProtocol.sendRequest(host);
-                    DatagramPacket identPacket = IdentProtocol.receiveResponse(identSocket);
+                    // Discovery may have already talked to the robot
+                    IdentProtocol.IdentData ident = identCache.getByAddress(host.getHostAddress());
 
-                    identSocket.close();
-                    IdentProtocol.IdentData ident;
+                    if (ident == null) {
+                        DatagramSocket identSocket = IdentProtocol.sendRequest(host);
+                        DatagramPacket identPacket = IdentProtocol.receiveResponse(identSocket);
 
-                    try {
-                        ident = new IdentProtocol.IdentData(identPacket);
-                    } catch (JSONException e) {
-                        updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR,
-                                "Malformed IDENT response");
-                        return;
+                        identSocket.close();
+
+                        try {
+                            ident = new IdentProtocol.IdentData(identPacket);
+                        } catch (JSONException e) {
+                            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR,
+                                    "Malformed IDENT response");
+                            return;
+                        }
+
+                        identCache.put(host.getHostAddress(), ident);
+                    } else {
+                        logger.debug("Using cached IDENT data for {}", config.ipaddress);
                     }
 
                     if (ident.ver < IdentData.MIN_SUPPORTED_VERSION) {
@@ -261,69 +491,153 @@ public class RoombaHandler extends BaseThingHandler {
                     }
 
                     blid = ident.blid;
+                    capabilities = ident.cap;
                 }
 
                 logger.debug("BLID is: {}", blid);
 
                 if (!config.havePassword()) {
-                    RawMQTT mqtt;
-
-                    try {
-                        mqtt = new RawMQTT(host, 8883);
-                    } catch (KeyManagementException | NoSuchAlgorithmException e1) {
-                        updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR, e1.toString());
-                        return; // This is internal system error, no retry
-                    }
-
-                    mqtt.requestPassword();
-                    RawMQTT.Packet response = mqtt.readPacket();
-                    mqtt.close();
-
-                    if (response != null && response.isValidPasswdPacket()) {
-                        RawMQTT.PasswdPacket passwdPacket = new RawMQTT.PasswdPacket(response);
-
-                        config.password = passwdPacket.getPassword();
-                        if (config.havePassword()) {
-                            Configuration configuration = editConfiguration();
-
-                            configuration.put(RoombaConfiguration.FIELD_PASSWORD, config.password);
-                            updateConfiguration(configuration);
-                        }
-                    }
-                }
-
-                if (!config.havePassword()) {
-                    updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_PENDING,
-                            "Authentication on the robot is required");
-                    scheduleReconnect();
+                    requestPassword(host);
                     return;
                 }
 
                 logger.debug("Password is: " + config.password);
 
                 // BLID is used as both client ID and username. The name of BLID also came from Roomba980-python
-                connection = new RoombaMqttBrokerConnection(config.ipaddress, blid, this);
+                router = createRouter();
+                connection = new RoombaMqttBrokerConnection(config.ipaddress, blid, router, this, config.keepAlive,
+                        timer, TimeUnit.SECONDS.toMillis(config.inactivityTimeout));
                 connection.start(blid, config.password);
+                started = true;
 
             } catch (Exception e) {
                 error = e.toString();
+            } finally {
+                if (!started) {
+                    // Pairing waits for the user, so it doesn't count as connecting
+                    releaseTicket();
+                }
             }
 
             if (error != null) {
                 logger.error(error);
+                forgetIdent();
                 updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR, error);
                 scheduleReconnect();
             }
         });
     }
 
+    // Connecting has failed. The robot may have got another address or firmware,
+    // so don't trust IDENT data we have until it's been received again.
+    private void forgetIdent() {
+        String address = connectAddress;
+
+        connectAddress = null;
+        if (address != null) {
+            identCache.invalidate(address);
+            blid = null;
+        }
+    }
+
+    // The robot gives out its password only for a short time after its HOME button
+    // has been held, so keep asking until the user does that. Asking doesn't block
+    // anything; the answer comes back on our serial executor.
+    private void requestPassword(InetAddress host) {
+        PasswordRequester requester = passwords;
+
+        if (requester == null) {
+            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR, "Password is required");
+            return;
+        }
+
+        pairingAttempts++;
+        updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_PENDING,
+                "Authentication on the robot is required, hold HOME button for 2 seconds (attempt "
+                        + pairingAttempts + ")");
+
+        CompletableFuture<String> request = requester.request(host, RawMQTT.ROOMBA_MQTT_PORT,
+                TimeUnit.SECONDS.toMillis(pairingWindow), metrics.handshakeTime);
+
+        cancelPairing();
+        pairing = request;
+        request.whenComplete((password, error) -> serialExecutor.execute(() -> {
+            if (pairing != request) {
+                return; // Cancelled or superseded
+            }
+
+            pairing = null;
+            if (password != null) {
+                onPassword(password);
+            } else {
+                logger.debug("No password from {}: {}", config.ipaddress, error.toString());
+                // The robot stays in pairing mode only for 30 seconds, so we
+                // can't back off here
+                scheduleReconnect(TimeUnit.SECONDS.toMillis(passwordRetryDelay));
+            }
+        }));
+    }
+
+    private void onPassword(String password) {
+        logger.info("Got password from {} after {} attempts", config.ipaddress, pairingAttempts);
+        pairingAttempts = 0;
+        config.password = password;
+
+        Configuration configuration = editConfiguration();
+
+        configuration.put(RoombaConfiguration.FIELD_PASSWORD, password);
+        updateConfiguration(configuration);
+        connect();
+    }
+
+    private void cancelPairing() {
+        CompletableFuture<String> request = pairing;
+
+        if (request != null) {
+            pairing = null;
+            request.cancel(false);
+        }
+    }
+
     private void scheduleReconnect() {
+        long delay = reconnectPolicy.nextDelay();
+
+        logger.debug("Reconnecting to {} in {} ms, attempt {}", config.ipaddress, delay,
+                reconnectPolicy.getFailures());
+        scheduleReconnect(delay);
+    }
+
+    private void scheduleReconnect(long delay) {
+        Future<?> pending = reconnectReq;
+
+        if (pending != null) {
+            pending.cancel(false);
+        }
+
+        Object token = lifecycle;
+
         reconnectReq = scheduler.schedule(() -> {
-            connect();
-        }, reconnectDelay, TimeUnit.SECONDS);
+            if (lifecycle == token) {
+                connect();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
     }
 
     public void onConnected() {
+        RoombaMqttBrokerConnection conn = connection;
+
+        releaseTicket();
+        connectAddress = null;
+        // The robot may have moved while we were away
+        serialExecutor.execute(() -> poseFilter.reset());
+        reconnectPolicy.onConnected();
+        metrics.connectTime.record(System.nanoTime() - connectStart);
+        logger.debug("Connected to {} after {} attempts, {} ms; MQTT connect took {} ms", config.ipaddress,
+                reconnectPolicy.getFailures(), reconnectPolicy.getLastReconnectTime(),
+                conn != null ? conn.getConnectTime() : -1);
+        if (conn != null) {
+            commands.online(conn::publish);
+        }
         updateStatus(ThingStatus.ONLINE);
     }
 
@@ -331,13 +645,186 @@ public class RoombaHandler extends BaseThingHandler {
         String message = error.getMessage();
 
         logger.error("MQTT connection failed: {}", message);
+        releaseTicket();
+        // Only if we've never got connected
+        serialExecutor.execute(this::forgetIdent);
+        commands.offline();
+        reconnectPolicy.onDisconnected();
         updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR, message);
         scheduleReconnect();
     }
 
+    public ReconnectPolicy getReconnectPolicy() {
+        return reconnectPolicy;
+    }
+
+    public RoombaMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Periodic update of diagnostic channels
+    private void reportStatistics() {
+        Map<String, Double> rates = metrics.sampleMessageRates();
+        double rate = 0;
+
+        for (double r : rates.values()) {
+            rate += r;
+        }
+
+        reportStatistic(RoombaChannel.STAT_MESSAGE_RATE, new DecimalType(Math.round(rate * 10) / 10.0));
+        reportStatistic(RoombaChannel.STAT_PARSE_TIME, new DecimalType(metrics.parseTime.getPercentile(0.99)));
+        reportStatistic(RoombaChannel.STAT_CONNECT_TIME,
+                new DecimalType(Math.round(metrics.connectTime.getMean() / 1000)));
+        reportStatistic(RoombaChannel.STAT_RECONNECTS, new DecimalType(reconnectPolicy.getReconnects()));
+        reportStatistic(RoombaChannel.STAT_PUBLISH_FAILURES, new DecimalType(metrics.publishFailures.sum()));
+        reportStatistic(RoombaChannel.STAT_UPDATES_SUPPRESSED, new DecimalType(metrics.stateSuppressed.sum()));
+        reportStatistic(RoombaChannel.STAT_STALL_DETECT_TIME,
+                new DecimalType(Math.round(metrics.stallDetectTime.getMean() / 1000)));
+    }
+
+    // Diagnostic channels don't count as state updates themselves
+    private void reportStatistic(RoombaChannel channel, State value) {
+        if (lastState.update(channel, value)) {
+            updateState(channel.getId(), value);
+        }
+    }
+
+    // Human-readable dump for the console
+    public List<String> getStatisticsReport() {
+        List<String> report = new ArrayList<>();
+        ReconnectPolicy policy = reconnectPolicy;
+        CommandQueue queue = commands;
+        TopicRouter topics = router;
+        ShadowState.Snapshot snapshot = shadow.get();
+
+        report.add("messages: " + metrics.getMessageCount() + " total");
+        metrics.getMessageRates().forEach((topic, rate) -> {
+            report.add(String.format("  %s: %.1f msgs/s", topic, rate));
+        });
+        if (topics != null) {
+            report.add("routes (! - rejected):");
+            topics.getCounts().forEach((topic, count) -> {
+                report.add(String.format("  %s: %d", topic, count));
+            });
+        }
+        report.add(String.format("pipeline: %d received, %d conflated, %d dropped, %d queued",
+                messages.getReceivedCount(), messages.getConflatedCount(), messages.getDroppedCount(),
+                messages.getQueueDepth()));
+        report.add("parse time: " + metrics.parseTime);
+        report.add(String.format("shadow: version %d, %d keys", snapshot.getVersion(), snapshot.size()));
+        report.add(String.format("state updates: %d emitted, %d unchanged, %d throttled", metrics.stateUpdates.sum(),
+                metrics.stateSuppressed.sum(), metrics.stateThrottled.sum()));
+        report.add(String.format("publish: %d sent, %d failed", metrics.published.sum(),
+                metrics.publishFailures.sum()));
+        if (queue != null) {
+            report.add(String.format("commands: %d sent, %d expired, %d dropped, %d queued", queue.getSentCount(),
+                    queue.getExpiredCount(), queue.getDroppedCount(), queue.getQueueDepth()));
+        }
+        report.add("connect time: " + metrics.connectTime);
+        report.add("MQTT connect time: " + metrics.mqttConnectTime);
+        report.add("password handshake time: " + metrics.handshakeTime);
+        report.add("stalled connections: " + metrics.stallDetectTime.getCount() + ", detected after "
+                + metrics.stallDetectTime);
+        if (policy != null) {
+            report.add(String.format("reconnects: %d, %d attempts, %d failures now", policy.getReconnects(),
+                    policy.getTotalAttempts(), policy.getFailures()));
+        }
+
+        return report;
+    }
+
+    // Handlers for individual keys of "reported" state. Keys, not listed here,
+    // are skipped without being parsed.
+    @FunctionalInterface
+    private interface ReportedField {
+        void process(RoombaHandler handler, JsonReader reader);
+    }
+
+    // Sent several times a second and different every time. Keeping them in the shadow
+    // would copy it on every message for nothing, they have their own channels.
+    private static final Set<String> TELEMETRY_KEYS = new HashSet<>(Arrays.asList("pose", "signal"));
+
+    // Keys, reportSettings() is derived from
+    private static final String[] SETTINGS_KEYS = { ShadowState.KEY_CARPET_BOOST, ShadowState.KEY_VAC_HIGH,
+            ShadowState.KEY_NO_AUTO_PASSES, ShadowState.KEY_TWO_PASS };
+
+    private static final Map<String, ReportedField> REPORTED_FIELDS = new HashMap<>();
+
+    static {
+        REPORTED_FIELDS.put(ShadowState.KEY_MISSION_STATUS, RoombaHandler::processMissionStatus);
+        REPORTED_FIELDS.put("batPct", (h, r) -> h.reportTelemetry(RoombaChannel.BATTERY, h.shadowInt("batPct", r)));
+        REPORTED_FIELDS.put("bin", RoombaHandler::processBin);
+        REPORTED_FIELDS.put("signal", RoombaHandler::processSignal);
+        REPORTED_FIELDS.put("pose", RoombaHandler::processPose);
+        REPORTED_FIELDS.put(ShadowState.KEY_SCHEDULE, RoombaHandler::processSchedule);
+        REPORTED_FIELDS.put("pmaps", RoombaHandler::processMaps);
+        REPORTED_FIELDS.put("lastCommand", RoombaHandler::processLastCommand);
+        // "openOnly":false
+        REPORTED_FIELDS.put("openOnly",
+                (h, r) -> h.reportSwitch(RoombaChannel.EDGE_CLEAN, !h.shadowBoolean("openOnly", r)));
+        // "binPause":true
+        REPORTED_FIELDS.put("binPause",
+                (h, r) -> h.reportSwitch(RoombaChannel.ALWAYS_FINISH, !h.shadowBoolean("binPause", r)));
+        // These depend on each other, so channels are updated from the merged shadow, see reportSettings()
+        // "carpetBoost":true, "vacHigh":false, "noAutoPasses":true, "twoPass":true
+        for (String setting : SETTINGS_KEYS) {
+            REPORTED_FIELDS.put(setting, (h, r) -> h.shadowBoolean(setting, r));
+        }
+        // {"navSwVer":"01.12.01#1","wifiSwVer":"20992","mobilityVer":"5806","bootloaderVer":"4042","umiVer":"6",
+        // "softwareVer":"v2.4.6-3","tz":{"events":[{"dt":1583082000,"off":180},{"dt":1619884800,"off":180},
+        // {"dt":0,"off":0}],"ver":8}}
+        REPORTED_FIELDS.put("softwareVer",
+                (h, r) -> h.reportProperty(Thing.PROPERTY_FIRMWARE_VERSION, h.shadowString("softwareVer", r)));
+        for (String property : new String[] { "navSwVer", "wifiSwVer", "mobilityVer", "bootloaderVer", "umiVer" }) {
+            REPORTED_FIELDS.put(property, (h, r) -> h.reportProperty(property, h.shadowString(property, r)));
+        }
+    }
+
+    private static final Map<String, ReportedField> SIGNAL_FIELDS = Collections.singletonMap("signal",
+            RoombaHandler::processSignal);
+
+    // Shadow updates carry everything, "wifistat" only signal strength. Anything else
+    // the robot sends is of no interest.
+    private TopicRouter createRouter() {
+        return new TopicRouter().addRoute("$aws/things/" + blid + "/shadow/update", this::processMessage)
+                .addRoute("wifistat", this::processSignalMessage);
+    }
+
+    // Called by MQTT connection on its I/O thread. Actual processing is deferred.
+    public void onMessage(String topic, byte[] payload, RoombaMessagePipeline.Consumer decoder) {
+        metrics.messageReceived(topic);
+        messages.offer(topic, payload, decoder);
+    }
+
+    public RoombaMessagePipeline getMessagePipeline() {
+        return messages;
+    }
+
     public void processMessage(String topic, byte[] payload) {
-        String jsonStr = new String(payload);
-        logger.trace("Got topic {} data {}", topic, jsonStr);
+        processMessage(topic, payload, REPORTED_FIELDS);
+    }
+
+    public void processSignalMessage(String topic, byte[] payload) {
+        processMessage(topic, payload, SIGNAL_FIELDS);
+    }
+
+    private void processMessage(String topic, byte[] payload, Map<String, ReportedField> fields) {
+        long start = System.nanoTime();
+
+        try {
+            decodeMessage(topic, payload, fields);
+            applyShadow();
+            applyProperties();
+        } finally {
+            fragment.clear();
+            metrics.parseTime.record(System.nanoTime() - start);
+        }
+    }
+
+    private void decodeMessage(String topic, byte[] payload, Map<String, ReportedField> fields) {
+        if (logger.isTraceEnabled()) {
+            logger.trace("Got topic {} data {}", topic, new String(payload, StandardCharsets.UTF_8));
+        }
 
         try {
             // Data comes as JSON string: {"state":{"reported":<Actual content here>}}
@@ -345,195 +832,424 @@ public class RoombaHandler extends BaseThingHandler {
             // Of the second form i've so far observed only: {"state":{"desired":{"echo":null}}}
             // I don't know what it is, so let's ignore it.
             // Examples of the first form are given below, near the respective parsing code
-            JSONObject state = new JSONObject(jsonStr).getJSONObject("state");
+            JsonReader reader = new JsonReader(payload);
 
-            if (!state.has("reported")) {
-                return;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("state")) {
+                    processState(reader, fields);
+                } else {
+                    reader.skipValue();
+                }
             }
+            reader.endObject();
+        } catch (JSONException e) {
+            logger.error("Failed to parse JSON message from {}: {}", config.ipaddress, e);
+            logger.error("Raw contents: {}", new String(payload, StandardCharsets.UTF_8));
+        }
+    }
 
-            JSONObject reported = state.getJSONObject("reported");
-
-            if (reported.has("cleanMissionStatus")) {
-                // {"cleanMissionStatus":{"cycle":"clean","phase":"hmUsrDock","expireM":0,"rechrgM":0,"error":0,"notReady":0,"mssnM":1,"sqft":7,"initiator":"rmtApp","nMssn":39}}
-                JSONObject missionStatus = reported.getJSONObject("cleanMissionStatus");
-                String cycle = missionStatus.getString("cycle");
-                String phase = missionStatus.getString("phase");
-                String command;
+    private void processState(JsonReader reader, Map<String, ReportedField> fields) {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("reported")) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    ReportedField field = fields.get(name);
+                    int mark = reader.mark();
+
+                    if (field != null) {
+                        field.process(this, reader);
+                    } else {
+                        reader.skipValue();
+                    }
 
-                if (cycle.equals("none")) {
-                    command = CMD_STOP;
-                } else {
-                    switch (phase) {
-                        case "stop":
-                        case "stuck": // CHECKME: could also be equivalent to "stop" command
-                        case "pause": // Never observed in Roomba 930
-                            command = CMD_PAUSE;
-                            break;
-                        case "hmUsrDock":
-                        case "dock": // Never observed in Roomba 930
-                            command = CMD_DOCK;
-                            break;
-                        default:
-                            command = cycle; // "clean" or "spot"
-                            break;
+                    if (!fragment.containsKey(name) && !TELEMETRY_KEYS.contains(name)) {
+                        // Not a typed value, keep it as it came
+                        fragment.put(name, new ShadowState.Raw(reader.getRawValue(mark)));
                     }
                 }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
 
-                isPaused = command.equals(CMD_PAUSE);
+    private void processMissionStatus(JsonReader reader) {
+        // {"cleanMissionStatus":{"cycle":"clean","phase":"hmUsrDock","expireM":0,"rechrgM":0,"error":0,"notReady":0,
+        // "mssnM":1,"sqft":7,"initiator":"rmtApp","nMssn":39}}
+        MissionStatus status = MissionStatus.parse(reader);
 
-                reportString(CHANNEL_CYCLE, cycle);
-                reportString(CHANNEL_PHASE, phase);
-                reportString(CHANNEL_COMMAND, command);
-                reportString(CHANNEL_ERROR, String.valueOf(missionStatus.getInt("error")));
-            }
+        fragment.put(ShadowState.KEY_MISSION_STATUS, status);
+        reportString(RoombaChannel.CYCLE, status.cycle);
+        reportString(RoombaChannel.PHASE, status.phase);
+        reportString(RoombaChannel.COMMAND, status.getCommand());
+        reportString(RoombaChannel.ERROR, String.valueOf(status.error));
 
-            if (reported.has("batPct")) {
-                reportInt(CHANNEL_BATTERY, reported.getInt("batPct"));
-            }
+        MissionHistory history = missionHistory;
 
-            if (reported.has("bin")) {
-                JSONObject bin = reported.getJSONObject("bin");
-                String binStatus;
+        if (history != null
+                && missionTracker.update(status.cycle, status.nMssn, status.sqft, status.mssnM, status.expireM,
+                        status.rechrgM, status.error, status.initiator, history)) {
+            reportMissionHistory(history);
+        }
 
-                // The bin cannot be both full and removed simultaneously, so let's
-                // encode it as a single value
-                if (!bin.getBoolean("present")) {
-                    binStatus = BIN_REMOVED;
-                } else if (bin.getBoolean("full")) {
-                    binStatus = BIN_FULL;
-                } else {
-                    binStatus = BIN_OK;
-                }
+        updateTrajectory(status.cycle, status.nMssn);
+    }
 
-                reportString(CHANNEL_BIN, binStatus);
-            }
+    private void reportMissionHistory(MissionHistory history) {
+        if (history.size() > 0) {
+            reportInt(RoombaChannel.LAST_MISSION_AREA, history.getLastArea());
+            reportInt(RoombaChannel.LAST_MISSION_DURATION, history.getLastDuration());
+            reportState(RoombaChannel.AVG_MISSION_AREA, new DecimalType(round(history.getAverageArea())));
+            reportState(RoombaChannel.AVG_MISSION_DURATION, new DecimalType(round(history.getAverageDuration())));
+        }
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
 
-            if (reported.has("signal")) {
-                // {"signal":{"rssi":-55,"snr":33}}
-                JSONObject signal = reported.getJSONObject("signal");
+    private void openMissionHistory() {
+        Path file = getMissionHistoryFile();
 
-                reportInt(CHANNEL_RSSI, signal.getInt("rssi"));
-                reportInt(CHANNEL_SNR, signal.getInt("snr"));
+        try {
+            MissionHistory history = MissionHistory.open(file, missionHistorySize);
+
+            missionHistory = history;
+            reportMissionHistory(history);
+        } catch (IOException e) {
+            logger.warn("Failed to open mission history {}: {}", file, e.toString());
+        }
+    }
+
+    private void closeMissionHistory() {
+        MissionHistory history = missionHistory;
+
+        missionHistory = null;
+        if (history != null) {
+            try {
+                history.close();
+            } catch (IOException e) {
+                logger.debug("Failed to close mission history: {}", e.toString());
             }
+        }
+    }
 
-            if (reported.has("cleanSchedule")) {
-                // "cleanSchedule":{"cycle":["none","start","start","start","start","none","none"],"h":[9,12,12,12,12,12,9],"m":[0,0,0,0,0,0,0]}
-                JSONObject schedule = reported.getJSONObject("cleanSchedule");
+    // One trajectory file per mission, only for robots which declare "pose" capability
+    private void updateTrajectory(String cycle, int nMssn) {
+        TrajectoryLog log = trajectory;
+        boolean running = !cycle.equals("none");
 
-                if (schedule.has("cycle")) {
-                    JSONArray cycle = schedule.getJSONArray("cycle");
-                    int binary = 0;
+        if (log != null && (!running || log.getMission() != nMssn)) {
+            closeTrajectory();
+            log = null;
+        }
 
-                    for (int i = 0; i < cycle.length(); i++) {
-                        boolean on = cycle.getString(i).equals("start");
+        Integer poseCap = capabilities.get("pose");
 
-                        reportSwitch(CHANNEL_SCHED_SWITCH[i], on);
-                        if (on) {
-                            binary |= (1 << i);
-                        }
-                    }
+        if (log == null && running && config.poseLog && poseCap != null && poseCap > 0) {
+            long now = System.currentTimeMillis();
+            Path dir = getTrajectoryDirectory();
+            Path file = dir.resolve("mission-" + nMssn + "-" + TimeUnit.MILLISECONDS.toSeconds(now) + ".trajectory");
 
-                    reportInt(CHANNEL_SCHEDULE, binary);
-                }
+            try {
+                // Make room for the new one
+                TrajectoryLog.prune(dir, trajectoryFilesKept - 1);
+                trajectory = TrajectoryLog.create(file, nMssn, now);
+                logger.debug("Recording trajectory of mission {} to {}", nMssn, file);
+            } catch (IOException e) {
+                logger.warn("Failed to create trajectory log {}: {}", file, e.toString());
+            }
+        }
+    }
 
-                lastSchedule = schedule;
+    public Path getTrajectoryDirectory() {
+        return Paths.get(ConfigConstants.getUserDataFolder(), BINDING_ID, getThing().getUID().getId());
+    }
+
+    private Path getMissionHistoryFile() {
+        return Paths.get(ConfigConstants.getUserDataFolder(), BINDING_ID, getThing().getUID().getId() + ".missions");
+    }
+
+    // Recorded data belongs to the thing, so it goes away together with it
+    private void deleteRecordedData() {
+        Path dir = getTrajectoryDirectory();
+
+        closeMissionHistory();
+        closeTrajectory();
+        try {
+            for (Path file : TrajectoryLog.list(dir)) {
+                Files.deleteIfExists(file);
             }
+            Files.deleteIfExists(dir);
+            Files.deleteIfExists(getMissionHistoryFile());
+        } catch (IOException e) {
+            logger.warn("Failed to delete recorded data of {}: {}", getThing().getUID(), e.toString());
+        }
+    }
 
-            if (reported.has("openOnly")) {
-                // "openOnly":false
-                reportSwitch(CHANNEL_EDGE_CLEAN, !reported.getBoolean("openOnly"));
+    private void closeTrajectory() {
+        TrajectoryLog log = trajectory;
+
+        trajectory = null;
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                logger.debug("Failed to close trajectory log: {}", e.toString());
             }
+        }
+    }
+
+    private void processPose(JsonReader reader) {
+        // "pose":{"theta":-117,"point":{"x":102,"y":-4}}
+        pose.decode(reader);
 
-            if (reported.has("binPause")) {
-                // "binPause":true
-                reportSwitch(CHANNEL_ALWAYS_FINISH, !reported.getBoolean("binPause"));
+        long now = System.currentTimeMillis();
+        TrajectoryLog log = trajectory;
+
+        // The log gets everything we receive, channels only get meaningful moves
+        if (log != null) {
+            try {
+                log.append(now, pose);
+            } catch (IOException e) {
+                logger.warn("Failed to write trajectory log: {}", e.toString());
+                closeTrajectory();
             }
+        }
 
-            if (reported.has("carpetBoost")) {
-                // "carpetBoost":true
-                carpet_boost = reported.getBoolean("carpetBoost");
-                if (carpet_boost) {
-                    // When set to true, overrides vacHigh
-                    reportString(CHANNEL_POWER_BOOST, BOOST_AUTO);
-                } else if (vac_high != null) {
-                    reportVacHigh();
-                }
+        if (poseFilter.accept(now, pose)) {
+            reportInt(RoombaChannel.POSE_X, pose.getX());
+            reportInt(RoombaChannel.POSE_Y, pose.getY());
+            reportInt(RoombaChannel.POSE_THETA, pose.getTheta());
+        }
+    }
+
+    private void processBin(JsonReader reader) {
+        // "bin":{"present":true,"full":false}
+        boolean present = true;
+        boolean full = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "present":
+                    present = reader.nextBoolean();
+                    break;
+                case "full":
+                    full = reader.nextBoolean();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
             }
+        }
+        reader.endObject();
+
+        // The bin cannot be both full and removed simultaneously, so let's
+        // encode it as a single value
+        if (!present) {
+            reportString(RoombaChannel.BIN, BIN_REMOVED);
+        } else if (full) {
+            reportString(RoombaChannel.BIN, BIN_FULL);
+        } else {
+            reportString(RoombaChannel.BIN, BIN_OK);
+        }
+    }
 
-            if (reported.has("vacHigh")) {
-                // "vacHigh":false
-                vac_high = reported.getBoolean("vacHigh");
-                if (!carpet_boost) {
-                    // Can be overridden by "carpetBoost":true
-                    reportVacHigh();
-                }
+    private void processSignal(JsonReader reader) {
+        // {"signal":{"rssi":-55,"snr":33}}
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "rssi":
+                    reportTelemetry(RoombaChannel.RSSI, reader.nextInt());
+                    break;
+                case "snr":
+                    reportTelemetry(RoombaChannel.SNR, reader.nextInt());
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
             }
+        }
+        reader.endObject();
+    }
 
-            if (reported.has("noAutoPasses")) {
-                // "noAutoPasses":true
-                auto_passes = !reported.getBoolean("noAutoPasses");
-                if (auto_passes) {
-                    // When set to false, overrides twoPass
-                    reportString(CHANNEL_CLEAN_PASSES, PASSES_AUTO);
-                } else if (two_passes != null) {
-                    reportTwoPasses();
-                }
+    private void processSchedule(JsonReader reader) {
+        // "cleanSchedule":{"cycle":["none","start","start","start","start","none","none"],
+        // "h":[9,12,12,12,12,12,9],"m":[0,0,0,0,0,0,0]}
+        CleanSchedule schedule = CleanSchedule.parse(reader);
+
+        if (schedule == null) {
+            // A partial update without "cycle", keep the last known schedule
+            return;
+        }
+
+        for (int i = 0; i < CleanSchedule.DAYS; i++) {
+            reportSwitch(RoombaChannel.SCHED_SWITCH[i], schedule.isEnabled(i));
+            if (schedule.haveTimes()) {
+                reportString(RoombaChannel.SCHED_TIME[i], schedule.formatTime(i));
             }
+        }
+
+        reportInt(RoombaChannel.SCHEDULE, schedule.getCycleMask());
+        fragment.put(ShadowState.KEY_SCHEDULE, schedule);
+    }
+
+    private void processMaps(JsonReader reader) {
+        // "pmaps":[{"7BWzb9_ZRNmbNZe4rkE0fw":"201006T004121"}]
+        if (regions.parseMaps(reader)) {
+            reportProperty(PROPERTY_REGIONS, regions.toString());
+        }
+    }
+
+    private void processLastCommand(JsonReader reader) {
+        // "lastCommand":{"command":"start","time":1602030144,"initiator":"rmtApp","pmap_id":"7BWzb9_ZRNmbNZe4rkE0fw",
+        // "regions":[{"region_id":"22","type":"rid"}],"ordered":1,"user_pmapv_id":"201006T004121"}
+        List<String> ids = regions.parseLastCommand(reader);
+
+        if (ids != null) {
+            reportString(RoombaChannel.CLEAN_REGIONS, String.join(",", ids));
+            reportProperty(PROPERTY_REGIONS, regions.toString());
+        }
+    }
+
+    private boolean shadowBoolean(String key, JsonReader reader) {
+        boolean value = reader.nextBoolean();
 
-            if (reported.has("twoPass")) {
-                // "twoPass":true
-                two_passes = reported.getBoolean("twoPass");
-                if (!auto_passes) {
-                    // Can be overridden by "noAutoPasses":false
-                    reportTwoPasses();
+        fragment.put(key, value);
+        return value;
+    }
+
+    private int shadowInt(String key, JsonReader reader) {
+        int value = reader.nextInt();
+
+        fragment.put(key, value);
+        return value;
+    }
+
+    private String shadowString(String key, JsonReader reader) {
+        String value = reader.nextString();
+
+        fragment.put(key, value);
+        return value;
+    }
+
+    private void applyShadow() {
+        if (fragment.isEmpty()) {
+            return;
+        }
+
+        ShadowState.Snapshot old = shadow.get();
+        ShadowState.Snapshot snapshot = shadow.merge(fragment);
+
+        fragment.clear();
+        if (snapshot.getVersion() != old.getVersion()) {
+            for (String key : SETTINGS_KEYS) {
+                if (!Objects.equals(old.get(key), snapshot.get(key))) {
+                    reportSettings(snapshot);
+                    break;
                 }
             }
-
-            // {"navSwVer":"01.12.01#1","wifiSwVer":"20992","mobilityVer":"5806","bootloaderVer":"4042","umiVer":"6","softwareVer":"v2.4.6-3","tz":{"events":[{"dt":1583082000,"off":180},{"dt":1619884800,"off":180},{"dt":0,"off":0}],"ver":8}}
-            reportProperty(Thing.PROPERTY_FIRMWARE_VERSION, reported, "softwareVer");
-            reportProperty(reported, "navSwVer");
-            reportProperty(reported, "wifiSwVer");
-            reportProperty(reported, "mobilityVer");
-            reportProperty(reported, "bootloaderVer");
-            reportProperty(reported, "umiVer");
-        } catch (JSONException e) {
-            logger.error("Failed to parse JSON message from {}: {}", config.ipaddress, e);
-            logger.error("Raw contents: {}", payload);
         }
     }
 
-    private void reportVacHigh() {
-        reportString(CHANNEL_POWER_BOOST, vac_high ? BOOST_PERFORMANCE : BOOST_ECO);
+    // Channels, derived from several keys
+    private void reportSettings(ShadowState.Snapshot snapshot) {
+        Boolean carpetBoost = snapshot.get(ShadowState.KEY_CARPET_BOOST, Boolean.class);
+        Boolean vacHigh = snapshot.get(ShadowState.KEY_VAC_HIGH, Boolean.class);
+        Boolean noAutoPasses = snapshot.get(ShadowState.KEY_NO_AUTO_PASSES, Boolean.class);
+        Boolean twoPass = snapshot.get(ShadowState.KEY_TWO_PASS, Boolean.class);
+
+        if (carpetBoost != null) {
+            if (carpetBoost) {
+                // When set to true, overrides vacHigh
+                reportString(RoombaChannel.POWER_BOOST, BOOST_AUTO);
+            } else if (vacHigh != null) {
+                reportString(RoombaChannel.POWER_BOOST, vacHigh ? BOOST_PERFORMANCE : BOOST_ECO);
+            }
+        }
+
+        if (noAutoPasses != null) {
+            if (!noAutoPasses) {
+                // When set to false, overrides twoPass
+                reportString(RoombaChannel.CLEAN_PASSES, PASSES_AUTO);
+            } else if (twoPass != null) {
+                reportString(RoombaChannel.CLEAN_PASSES, twoPass ? PASSES_2 : PASSES_1);
+            }
+        }
     }
 
-    private void reportTwoPasses() {
-        reportString(CHANNEL_CLEAN_PASSES, two_passes ? PASSES_2 : PASSES_1);
+    public ShadowState.Snapshot getShadow() {
+        return shadow.get();
     }
 
-    private void reportString(String channel, String str) {
+    private void reportString(RoombaChannel channel, String str) {
         reportState(channel, StringType.valueOf(str));
     }
 
-    private void reportInt(String channel, int n) {
+    private void reportInt(RoombaChannel channel, int n) {
         reportState(channel, new DecimalType(n));
     }
 
-    private void reportSwitch(String channel, boolean s) {
+    // Noisy values are rate limited, if configured so
+    private void reportTelemetry(RoombaChannel channel, int n) {
+        ChannelThrottle throttle = throttles.get(channel);
+
+        if (throttle == null) {
+            reportInt(channel, n);
+        } else if (!throttle.offer(n)) {
+            metrics.stateThrottled.increment();
+        }
+    }
+
+    private Map<RoombaChannel, ChannelThrottle> createThrottles() {
+        Map<RoombaChannel, ChannelThrottle> map = new EnumMap<>(RoombaChannel.class);
+
+        if (config.telemetryMinInterval > 0 || config.signalDeadband > 1 || config.batteryDeadband > 1) {
+            long minInterval = TimeUnit.SECONDS.toMillis(config.telemetryMinInterval);
+            long maxInterval = TimeUnit.SECONDS.toMillis(config.telemetryMaxInterval);
+
+            for (RoombaChannel channel : new RoombaChannel[] { RoombaChannel.RSSI, RoombaChannel.SNR }) {
+                map.put(channel, new ChannelThrottle(scheduler, serialExecutor, n -> reportInt(channel, n),
+                        minInterval, maxInterval, config.signalDeadband));
+            }
+            map.put(RoombaChannel.BATTERY, new ChannelThrottle(scheduler, serialExecutor,
+                    n -> reportInt(RoombaChannel.BATTERY, n), minInterval, maxInterval, config.batteryDeadband));
+        }
+
+        return map;
+    }
+
+    private void reportSwitch(RoombaChannel channel, boolean s) {
         reportState(channel, OnOffType.from(s));
     }
 
-    private void reportState(String channel, State value) {
-        lastState.put(channel, value);
-        updateState(channel, value);
+    private void reportState(RoombaChannel channel, State value) {
+        // Robot repeats unchanged values a lot, don't flood the event bus with them
+        if (lastState.update(channel, value)) {
+            metrics.stateUpdates.increment();
+            updateState(channel.getId(), value);
+        } else {
+            metrics.stateSuppressed.increment();
+        }
     }
 
-    private void reportProperty(JSONObject container, String attribute) {
-        reportProperty(attribute, container, attribute);
+    // Properties are collected while a message is processed, see applyProperties()
+    private void reportProperty(String property, String value) {
+        properties.put(property, value);
     }
 
-    private void reportProperty(String property, JSONObject container, String attribute) {
-        if (container.has(attribute)) {
-            updateProperty(property, container.getString(attribute));
+    private void applyProperties() {
+        Map<String, String> changes = properties.takeChanges();
+
+        if (!changes.isEmpty()) {
+            updateProperties(changes);
         }
     }
 }
@@ -0,0 +1,196 @@
+package org.openhab.binding.irobot.internal;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Binding-wide limit for connection attempts. Connecting means DNS lookup,
+// IDENT and TLS plus MQTT handshakes, so when openHAB starts with many robots
+// configured, doing all of it at once causes a CPU spike and timeouts, which
+// then cause retries. Here every attempt needs a ticket first. At most
+// maxConcurrent tickets are active at any time, and tickets are given out
+// no more often than once per interval, which spreads the initial connects.
+// Robots, which already have a password, are admitted before those, which
+// still need pairing; otherwise tickets go in request order.
+// A ticket is released by its owner, once it's connected or has failed. In case
+// the owner never does that, the ticket expires after the timeout.
+public class AdmissionController {
+
+    private final Logger logger = LoggerFactory.getLogger(AdmissionController.class);
+    private final ScheduledExecutorService scheduler;
+    private final PriorityQueue<Ticket> waiting = new PriorityQueue<>(
+            Comparator.comparing((Ticket t) -> !t.known).thenComparingLong(t -> t.sequence));
+
+    private int maxConcurrent;
+    private long interval;
+    private long timeout;
+
+    private int active = 0;
+    private boolean shutdown = false;
+    // Admitted and not yet released, for their expiry timers
+    private final Set<Ticket> admittedTickets = new HashSet<>();
+    private long sequence = 0;
+    private long nextAdmission = 0;
+    private @Nullable ScheduledFuture<?> pending;
+
+    // Statistics
+    private long admitted = 0;
+    private long expired = 0;
+    private long totalWaitTime = 0;
+
+    public class Ticket {
+        private final String name;
+        private final boolean known;
+        private final long sequence;
+        private final Runnable task;
+        private final long created = System.currentTimeMillis();
+        private boolean released = false;
+        private @Nullable ScheduledFuture<?> expiry;
+
+        private Ticket(String name, boolean known, long sequence, Runnable task) {
+            this.name = name;
+            this.known = known;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        // Gives the slot to the next one; a waiting ticket is just removed from
+        // the queue. Can be called more than once, from any thread.
+        public void release() {
+            AdmissionController.this.release(this, false);
+        }
+    }
+
+    // All times are in milliseconds
+    public AdmissionController(ScheduledExecutorService scheduler, int maxConcurrent, long interval, long timeout) {
+        this.scheduler = scheduler;
+        configure(maxConcurrent, interval, timeout);
+    }
+
+    public void configure(int maxConcurrent, long interval, long timeout) {
+        synchronized (this) {
+            this.maxConcurrent = Math.max(1, maxConcurrent);
+            this.interval = Math.max(0, interval);
+            this.timeout = Math.max(1, timeout);
+        }
+        dispatch();
+    }
+
+    // Runs the task once admitted. The task is run on the scheduler, so it
+    // should only hand the actual work over to the owner's executor.
+    public Ticket enqueue(String name, boolean known, Runnable task) {
+        Ticket ticket;
+
+        synchronized (this) {
+            ticket = new Ticket(name, known, sequence++, task);
+            if (shutdown) {
+                ticket.released = true;
+                return ticket;
+            }
+            waiting.add(ticket);
+        }
+        dispatch();
+        return ticket;
+    }
+
+    private void release(Ticket ticket, boolean timedOut) {
+        synchronized (this) {
+            if (ticket.released) {
+                return;
+            }
+
+            ticket.released = true;
+            if (waiting.remove(ticket)) {
+                return;
+            }
+
+            active--;
+            admittedTickets.remove(ticket);
+            if (timedOut) {
+                expired++;
+                logger.debug("Connection attempt of {} didn't finish in {} ms", ticket.name, timeout);
+            } else if (ticket.expiry != null) {
+                ticket.expiry.cancel(false);
+            }
+        }
+        dispatch();
+    }
+
+    private void dispatch() {
+        List<Ticket> admit = new ArrayList<>();
+
+        synchronized (this) {
+            while (!shutdown && active < maxConcurrent && !waiting.isEmpty()) {
+                long now = System.currentTimeMillis();
+
+                if (now < nextAdmission) {
+                    if (pending == null) {
+                        pending = scheduler.schedule(this::onTimer, nextAdmission - now, TimeUnit.MILLISECONDS);
+                    }
+                    break;
+                }
+
+                Ticket ticket = waiting.poll();
+
+                active++;
+                admitted++;
+                admittedTickets.add(ticket);
+                totalWaitTime += now - ticket.created;
+                nextAdmission = now + interval;
+                ticket.expiry = scheduler.schedule(() -> release(ticket, true), timeout, TimeUnit.MILLISECONDS);
+                admit.add(ticket);
+            }
+        }
+
+        for (Ticket ticket : admit) {
+            logger.trace("Admitting {}", ticket.name);
+            scheduler.execute(ticket.task);
+        }
+    }
+
+    // Cancels all timers; waiting and later enqueued tasks are never run.
+    // Releasing a ticket afterwards does nothing.
+    public synchronized void shutdown() {
+        shutdown = true;
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+        for (Ticket ticket : admittedTickets) {
+            ticket.released = true;
+            if (ticket.expiry != null) {
+                ticket.expiry.cancel(false);
+            }
+        }
+        for (Ticket ticket : waiting) {
+            ticket.released = true;
+        }
+        admittedTickets.clear();
+        waiting.clear();
+        active = 0;
+    }
+
+    private void onTimer() {
+        synchronized (this) {
+            pending = null;
+        }
+        dispatch();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "active=" + active + "/" + maxConcurrent + " waiting=" + waiting.size() + " admitted=" + admitted
+                + " expired=" + expired + " averageWait="
+                + (admitted > 0 ? totalWaitTime / admitted : 0) + "ms";
+    }
+}
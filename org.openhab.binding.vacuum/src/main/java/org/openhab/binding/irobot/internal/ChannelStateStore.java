@@ -0,0 +1,37 @@
+package org.openhab.binding.irobot.internal;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.smarthome.core.types.State;
+
+// Last known states of a handler's channels, indexed by channel enum ordinal.
+// Used to suppress updates, which do not change anything: robots repeat
+// the same values (battery, signal) very often, and every updateState() call
+// results in an event on the bus and a persistence write.
+public class ChannelStateStore<E extends Enum<E>> {
+
+    private final AtomicReferenceArray<@Nullable State> states;
+
+    public ChannelStateStore(Class<E> channels) {
+        states = new AtomicReferenceArray<>(channels.getEnumConstants().length);
+    }
+
+    // Stores the new value and returns true if it needs to be published, i. e.
+    // differs from the previous one. Refresh requests are served with get().
+    public boolean update(E channel, State value) {
+        State old = states.getAndSet(channel.ordinal(), value);
+
+        return !value.equals(old);
+    }
+
+    public @Nullable State get(E channel) {
+        return states.get(channel.ordinal());
+    }
+
+    public void clear() {
+        for (int i = 0; i < states.length(); i++) {
+            states.set(i, null);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.openhab.binding.irobot.internal;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.smarthome.io.console.Console;
+import org.eclipse.smarthome.io.console.extensions.AbstractConsoleCommandExtension;
+import org.openhab.binding.irobot.handler.RoombaHandler;
+import org.openhab.binding.irobot.roomba.ShadowState;
+import org.openhab.binding.irobot.roomba.TrajectoryLog;
+
+// "irobot" console command: dumps binding-wide and per-robot diagnostic
+// counters, the reported state of every robot and recorded trajectories. Registered by
+// IRobotHandlerFactory, which knows all the handlers.
+public class IRobotConsoleCommandExtension extends AbstractConsoleCommandExtension {
+
+    private final static String SUBCMD_STATS = "stats";
+    private final static String SUBCMD_SHADOW = "shadow";
+    private final static String SUBCMD_TRAJECTORY = "trajectory";
+
+    private final IRobotHandlerFactory factory;
+
+    public IRobotConsoleCommandExtension(IRobotHandlerFactory factory) {
+        super("irobot", "Diagnostics of the iRobot binding.");
+        this.factory = factory;
+    }
+
+    @Override
+    public void execute(String[] args, Console console) {
+        if (args.length == 1 && args[0].equals(SUBCMD_STATS)) {
+            printStatistics(console);
+        } else if (args.length == 1 && args[0].equals(SUBCMD_SHADOW)) {
+            printShadow(console);
+        } else if (args.length >= 2 && args.length <= 3 && args[0].equals(SUBCMD_TRAJECTORY)) {
+            printTrajectory(console, args[1], args.length == 3 ? args[2] : null);
+        } else {
+            printUsage(console);
+        }
+    }
+
+    private void printStatistics(Console console) {
+        console.println(String.format("TLS handshakes (password requests): %d, %d resumed, %.1f ms average",
+                TlsContext.getHandshakeCount(), TlsContext.getResumedCount(), TlsContext.getAverageHandshakeTime()));
+        console.println("Connection admission: " + factory.getAdmissionController());
+        for (Map.Entry<String, KeyedSerialExecutor.Statistics> entry : factory.getExecutorStatistics().entrySet()) {
+            console.println("Executor " + entry.getKey() + ": " + entry.getValue());
+        }
+
+        for (RoombaHandler handler : factory.getHandlers()) {
+            console.println(handler.getThing().getUID() + " (" + handler.getThing().getStatus() + "):");
+            for (String line : handler.getStatisticsReport()) {
+                console.println("  " + line);
+            }
+        }
+    }
+
+    private void printShadow(Console console) {
+        for (RoombaHandler handler : factory.getHandlers()) {
+            ShadowState.Snapshot snapshot = handler.getShadow();
+
+            console.println(handler.getThing().getUID() + " (version " + snapshot.getVersion() + "):");
+            snapshot.toMap().forEach((key, value) -> {
+                console.println("  " + key + ": " + value);
+            });
+        }
+    }
+
+    // Without a file name lists the recorded missions, otherwise prints the given one as CSV
+    private void printTrajectory(Console console, String thingId, String fileName) {
+        RoombaHandler handler = null;
+
+        for (RoombaHandler h : factory.getHandlers()) {
+            if (h.getThing().getUID().getId().equals(thingId) || h.getThing().getUID().getAsString().equals(thingId)) {
+                handler = h;
+            }
+        }
+
+        if (handler == null) {
+            console.println("No such thing: " + thingId);
+            return;
+        }
+
+        try {
+            List<Path> files = TrajectoryLog.list(handler.getTrajectoryDirectory());
+
+            if (fileName == null) {
+                for (Path file : files) {
+                    console.println(file.getFileName().toString());
+                }
+                return;
+            }
+
+            for (Path file : files) {
+                if (file.getFileName().toString().equals(fileName)) {
+                    StringBuilder csv = new StringBuilder();
+
+                    TrajectoryLog.export(file, csv);
+                    console.print(csv.toString());
+                    return;
+                }
+            }
+
+            console.println("No such trajectory: " + fileName);
+        } catch (IOException e) {
+            console.println("Failed to read trajectories: " + e);
+        }
+    }
+
+    @Override
+    public List<String> getUsages() {
+        return Arrays.asList(buildCommandUsage(SUBCMD_STATS, "show connection and message processing statistics"),
+                buildCommandUsage(SUBCMD_SHADOW, "show the last reported state of every robot"),
+                buildCommandUsage(SUBCMD_TRAJECTORY + " <thing id> [<file>]",
+                        "list recorded trajectories of the robot, or print one as CSV"));
+    }
+}
@@ -7,21 +7,34 @@
  */
 package org.openhab.binding.irobot.internal;
 
-import static org.openhab.binding.irobot.IRobotBindingConstants.THING_TYPE_ROOMBA;
+import static org.openhab.binding.irobot.IRobotBindingConstants.*;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.smarthome.core.common.ThreadPoolManager;
 
 import org.eclipse.smarthome.core.thing.Thing;
 import org.eclipse.smarthome.core.thing.ThingTypeUID;
 import org.eclipse.smarthome.core.thing.binding.BaseThingHandlerFactory;
 import org.eclipse.smarthome.core.thing.binding.ThingHandler;
 import org.eclipse.smarthome.core.thing.binding.ThingHandlerFactory;
+import org.eclipse.smarthome.io.console.extensions.ConsoleCommandExtension;
 import org.openhab.binding.irobot.handler.RoombaHandler;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.concurrent.DefaultThreadFactory;
 
 /**
  * The {@link IRobotHandlerFactory} is responsible for creating things and thing
@@ -33,6 +46,34 @@ import org.osgi.service.component.annotations.Component;
 public class IRobotHandlerFactory extends BaseThingHandlerFactory {
 
     private final static Set<ThingTypeUID> SUPPORTED_THING_TYPES_UIDS = Collections.singleton(THING_TYPE_ROOMBA);
+    private final static int SERIAL_EXECUTOR_THREADS = 4;
+    private final static int WATCHDOG_TICK = 250; // In milliseconds
+
+    // Binding configuration
+    private final static String CONFIG_MAX_CONCURRENT_CONNECTS = "maxConcurrentConnects";
+    private final static String CONFIG_CONNECT_INTERVAL = "connectInterval";
+    private final static String CONFIG_CONNECT_TIMEOUT = "connectTimeout";
+    private final static int DEFAULT_MAX_CONCURRENT_CONNECTS = 4;
+    private final static int DEFAULT_CONNECT_INTERVAL = 250; // In milliseconds
+    private final static int DEFAULT_CONNECT_TIMEOUT = 30; // In seconds
+
+    private KeyedSerialExecutor serialExecutor;
+    private IdentCache identCache;
+    private PasswordRequester passwords;
+    private AdmissionController admission;
+    // Inactivity watchdogs of all connections
+    private HashedWheelTimer timer;
+    private final Set<RoombaHandler> handlers = ConcurrentHashMap.newKeySet();
+    private ServiceRegistration<ConsoleCommandExtension> consoleCommand;
+
+    @Reference
+    protected void setIdentCache(IdentCache identCache) {
+        this.identCache = identCache;
+    }
+
+    protected void unsetIdentCache(IdentCache identCache) {
+        this.identCache = null;
+    }
 
     @Override
     public boolean supportsThingType(ThingTypeUID thingTypeUID) {
@@ -42,7 +83,65 @@ public class IRobotHandlerFactory extends BaseThingHandlerFactory {
     @Activate
     protected void activate(ComponentContext componentContext, Map<String, Object> config) {
         super.activate(componentContext);
-        // TODO: Handle config
+        admission = new AdmissionController(ThreadPoolManager.getScheduledPool("thingHandler"),
+                DEFAULT_MAX_CONCURRENT_CONNECTS, DEFAULT_CONNECT_INTERVAL,
+                TimeUnit.SECONDS.toMillis(DEFAULT_CONNECT_TIMEOUT));
+        modified(config);
+        serialExecutor = new KeyedSerialExecutor("OH-binding-" + BINDING_ID, SERIAL_EXECUTOR_THREADS);
+        passwords = new PasswordRequester("OH-binding-" + BINDING_ID + "-pairing");
+        timer = new HashedWheelTimer(new DefaultThreadFactory("OH-binding-" + BINDING_ID + "-watchdog", true),
+                WATCHDOG_TICK, TimeUnit.MILLISECONDS);
+        consoleCommand = componentContext.getBundleContext().registerService(ConsoleCommandExtension.class,
+                new IRobotConsoleCommandExtension(this), null);
+    }
+
+    @Modified
+    protected void modified(Map<String, Object> config) {
+        admission.configure(getInt(config, CONFIG_MAX_CONCURRENT_CONNECTS, DEFAULT_MAX_CONCURRENT_CONNECTS),
+                getInt(config, CONFIG_CONNECT_INTERVAL, DEFAULT_CONNECT_INTERVAL),
+                TimeUnit.SECONDS.toMillis(getInt(config, CONFIG_CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT)));
+    }
+
+    // Values come as numbers from the UI, but as strings from .cfg files
+    private static int getInt(Map<String, Object> config, String key, int defaultValue) {
+        Object value = config != null ? config.get(key) : null;
+
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Integer.parseInt(((String) value).trim());
+            } catch (NumberFormatException e) {
+                // Fall through
+            }
+        }
+
+        return defaultValue;
+    }
+
+    @Override
+    @Deactivate
+    protected void deactivate(ComponentContext componentContext) {
+        consoleCommand.unregister();
+        super.deactivate(componentContext);
+        serialExecutor.shutdown();
+        passwords.shutdown();
+        timer.stop();
+        admission.shutdown();
+    }
+
+    // Active and queued work per thing, for diagnostics
+    public Map<String, KeyedSerialExecutor.Statistics> getExecutorStatistics() {
+        return serialExecutor.getStatistics();
+    }
+
+    public AdmissionController getAdmissionController() {
+        return admission;
+    }
+
+    public Collection<RoombaHandler> getHandlers() {
+        return handlers;
     }
 
     @Override
@@ -51,9 +150,21 @@ public class IRobotHandlerFactory extends BaseThingHandlerFactory {
         ThingTypeUID thingTypeUID = thing.getThingTypeUID();
 
         if (thingTypeUID.equals(THING_TYPE_ROOMBA)) {
-            return new RoombaHandler(thing);
+            RoombaHandler handler = new RoombaHandler(thing, serialExecutor, identCache, passwords, admission, timer);
+
+            handlers.add(handler);
+            return handler;
         }
 
         return null;
     }
+
+    @Override
+    protected void removeHandler(ThingHandler thingHandler) {
+        // Handler's dispose() work may still be queued; in that case the queue
+        // stays until the next time. A disposed handler runs nothing more,
+        // so a queue, released here, is never used again.
+        handlers.remove(thingHandler);
+        serialExecutor.release(thingHandler.getThing().getUID().getAsString());
+    }
 }
@@ -0,0 +1,85 @@
+package org.openhab.binding.irobot.internal;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.irobot.internal.IdentProtocol.IdentData;
+import org.osgi.service.component.annotations.Component;
+
+// IDENT replies, shared between discovery and handlers. Discovery refreshes
+// them every minute anyway, so handlers don't need to repeat UDP exchange
+// (and risk a timeout) on every connect.
+// Lookups are by address only, that's what handlers are configured with. The
+// index by BLID makes sure that a robot, which has got a new address, doesn't
+// stay cached under the old one too.
+@Component(service = IdentCache.class)
+public class IdentCache {
+
+    // Several discovery rounds, in case a reply gets lost
+    public static final long TTL = TimeUnit.MINUTES.toMillis(5);
+
+    private static class Entry {
+        final String address;
+        final IdentData ident;
+        final long timestamp;
+
+        Entry(String address, IdentData ident) {
+            this.address = address;
+            this.ident = ident;
+            this.timestamp = System.currentTimeMillis();
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() - timestamp > TTL;
+        }
+    }
+
+    private final Map<String, Entry> byAddress = new ConcurrentHashMap<>();
+    private final Map<String, Entry> byBlid = new ConcurrentHashMap<>();
+
+    public void put(String address, IdentData ident) {
+        Entry entry = new Entry(address, ident);
+        Entry old = byBlid.put(ident.blid, entry);
+
+        // The robot may have got a new address from DHCP
+        if (old != null && !old.address.equals(address)) {
+            byAddress.remove(old.address, old);
+        }
+
+        old = byAddress.put(address, entry);
+        // ... and its old address may now belong to another robot
+        if (old != null && !old.ident.blid.equals(ident.blid)) {
+            byBlid.remove(old.ident.blid, old);
+        }
+    }
+
+    public @Nullable IdentData getByAddress(String address) {
+        Entry entry = byAddress.get(address);
+
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.isExpired()) {
+            remove(entry);
+            return null;
+        }
+
+        return entry.ident;
+    }
+
+    public void invalidate(String address) {
+        Entry entry = byAddress.get(address);
+
+        if (entry != null) {
+            remove(entry);
+        }
+    }
+
+    private void remove(Entry entry) {
+        byAddress.remove(entry.address, entry);
+        byBlid.remove(entry.ident.blid, entry);
+    }
+}
@@ -4,15 +4,34 @@ import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class IdentProtocol {
 
+    private static final Logger logger = LoggerFactory.getLogger(IdentProtocol.class);
     private static final String UDP_PACKET_CONTENTS = "irobotmcs";
     private static final int REMOTE_UDP_PORT = 5678;
+    private static final int MAX_RESPONSE_SIZE = 1024;
+
+    public interface ResponseListener {
+        void responseReceived(InetAddress host, byte[] data, int length);
+    }
 
     public static DatagramSocket sendRequest(InetAddress host) throws Exception {
         DatagramSocket socket = new DatagramSocket();
@@ -37,6 +56,56 @@ public class IdentProtocol {
         return incomingPacket;
     }
 
+    // Sends IDENT request to all the given addresses at once, then collects all
+    // replies, arriving within the given time. Uses a single non-blocking socket,
+    // so total time doesn't depend on number of addresses or responders.
+    public static void scan(Collection<InetAddress> hosts, long timeoutMillis, ResponseListener listener)
+            throws IOException {
+        try (Selector selector = Selector.open(); DatagramChannel channel = DatagramChannel.open()) {
+            channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.configureBlocking(false);
+            channel.bind(null);
+            channel.register(selector, SelectionKey.OP_READ);
+
+            ByteBuffer request = ByteBuffer.wrap(UDP_PACKET_CONTENTS.getBytes(StandardCharsets.UTF_8));
+
+            for (InetAddress host : hosts) {
+                logger.debug("Sending IDENT request to {}", host);
+                request.rewind();
+                try {
+                    channel.send(request, new InetSocketAddress(host, REMOTE_UDP_PORT));
+                } catch (IOException e) {
+                    // E. g. an interface went down; others may still work
+                    logger.debug("Error sending IDENT request to {}: {}", host, e.toString());
+                }
+            }
+
+            ByteBuffer response = ByteBuffer.allocate(MAX_RESPONSE_SIZE);
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            long remaining;
+
+            while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+                if (selector.select(remaining) == 0) {
+                    continue;
+                }
+                selector.selectedKeys().clear();
+
+                while (true) {
+                    response.clear();
+                    SocketAddress from = channel.receive(response);
+
+                    if (from == null) {
+                        break;
+                    }
+
+                    listener.responseReceived(((InetSocketAddress) from).getAddress(), response.array(),
+                            response.position());
+                }
+            }
+        }
+    }
+
     public static class IdentData {
         public static int MIN_SUPPORTED_VERSION = 2;
         public static String PRODUCT_ROOMBA = "Roomba";
@@ -45,8 +114,13 @@ public class IdentProtocol {
         public String product;
         public String blid;
         public String robotname;
+        public Map<String, Integer> cap;
 
         public IdentData(DatagramPacket incomingPacket) throws JSONException {
+            this(incomingPacket.getData(), incomingPacket.getLength());
+        }
+
+        public IdentData(byte[] data, int length) throws JSONException {
             /*
              * incomingPacket is a JSON of the following contents (addresses are undisclosed):
              * @formatter:off
@@ -76,7 +150,7 @@ public class IdentProtocol {
              * }
              * @formatter:on
              */
-            String reply = new String(incomingPacket.getData());
+            String reply = new String(data, 0, length, StandardCharsets.UTF_8);
             JSONObject irobotInfo = new JSONObject(reply);
 
             ver = irobotInfo.getInt("ver");
@@ -94,6 +168,17 @@ public class IdentProtocol {
             }
 
             blid = hostname[1];
+
+            Map<String, Integer> capabilities = new HashMap<>();
+            JSONObject capObject = irobotInfo.optJSONObject("cap");
+
+            if (capObject != null) {
+                for (String name : capObject.keySet()) {
+                    capabilities.put(name, capObject.optInt(name));
+                }
+            }
+
+            cap = Collections.unmodifiableMap(capabilities);
         }
     }
 }
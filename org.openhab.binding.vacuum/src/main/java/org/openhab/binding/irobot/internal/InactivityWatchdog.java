@@ -0,0 +1,78 @@
+package org.openhab.binding.irobot.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+
+// Declares a connection dead, if nothing has been received for the given time.
+// Robots stream their state all the time, so silence means that the robot has
+// gone, even if TCP hasn't noticed it yet.
+// touch() is called for every message, so it only records the time. The timer
+// isn't re-armed on every message; when it fires, it checks how long it's been
+// since the last one and, if that's still within the timeout, goes to sleep for
+// the rest of it. The timer is a shared hashed wheel, so thousands of watchdogs
+// cost one thread, and its precision of a tick is plenty here.
+public class InactivityWatchdog implements TimerTask {
+
+    public interface Listener {
+        // Called once, on the timer thread, with time since the last activity in nanoseconds
+        void onInactive(long silence);
+    }
+
+    private final Timer timer;
+    private final long timeout;
+    private final Listener listener;
+    private volatile long lastActivity;
+    private volatile boolean running = false;
+    private volatile @Nullable Timeout pending;
+
+    // Timeout is in milliseconds
+    public InactivityWatchdog(Timer timer, long timeout, Listener listener) {
+        this.timer = timer;
+        this.timeout = TimeUnit.MILLISECONDS.toNanos(timeout);
+        this.listener = listener;
+    }
+
+    public void start() {
+        lastActivity = System.nanoTime();
+        running = true;
+        schedule(timeout);
+    }
+
+    public void touch() {
+        lastActivity = System.nanoTime();
+    }
+
+    public void stop() {
+        Timeout t = pending;
+
+        running = false;
+        if (t != null) {
+            t.cancel();
+        }
+    }
+
+    @Override
+    public void run(@Nullable Timeout t) {
+        if (!running) {
+            return;
+        }
+
+        long silence = System.nanoTime() - lastActivity;
+
+        if (silence < timeout) {
+            schedule(timeout - silence);
+        } else {
+            running = false;
+            listener.onInactive(silence);
+        }
+    }
+
+    private void schedule(long delay) {
+        pending = timer.newTimeout(this, delay, TimeUnit.NANOSECONDS);
+    }
+}
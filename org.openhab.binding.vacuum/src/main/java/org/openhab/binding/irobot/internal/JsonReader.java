@@ -0,0 +1,514 @@
+package org.openhab.binding.irobot.internal;
+
+import java.nio.charset.StandardCharsets;
+
+import org.json.JSONException;
+
+// A minimal pull-style JSON reader working directly on a raw UTF-8 payload.
+// Roomba sends lots of messages, most of which contain only a couple of keys
+// we are interested in, so building a complete JSONObject tree for each of them
+// is a waste. This reader allows to walk down to the interesting part, pick
+// individual values and skip everything else without allocating anything.
+// Errors are reported using JSONException in order to stay compatible with
+// org.json-based code.
+// Objects and arrays are expected to be walked with begin*(), a hasNext() loop
+// and end*(); this is how commas between elements are checked.
+public class JsonReader {
+
+    // Nesting, for which commas are checked; deeper values can still be skipped
+    private static final int MAX_DEPTH = 64;
+
+    public enum Token {
+        BEGIN_OBJECT,
+        END_OBJECT,
+        BEGIN_ARRAY,
+        END_ARRAY,
+        STRING,
+        NUMBER,
+        BOOLEAN,
+        NULL,
+        END_DOCUMENT
+    }
+
+    private final byte[] data;
+    private final int limit;
+    private int pos;
+    // Objects and arrays entered. Bit N of haveElements is set once the one at
+    // depth N + 1 has had an element, so the next one must follow a comma.
+    private int depth = 0;
+    private long haveElements = 0;
+
+    public JsonReader(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    public JsonReader(byte[] data, int offset, int length) {
+        this.data = data;
+        this.pos = offset;
+        this.limit = offset + length;
+    }
+
+    public Token peek() {
+        skipWhitespace();
+        if (pos >= limit) {
+            return Token.END_DOCUMENT;
+        }
+
+        switch (data[pos]) {
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '}':
+                return Token.END_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case ']':
+                return Token.END_ARRAY;
+            case '"':
+                return Token.STRING;
+            case 't':
+            case 'f':
+                return Token.BOOLEAN;
+            case 'n':
+                return Token.NULL;
+            default:
+                return Token.NUMBER;
+        }
+    }
+
+    public void beginObject() {
+        expect('{');
+        enter();
+    }
+
+    public void endObject() {
+        expect('}');
+        leave();
+    }
+
+    public void beginArray() {
+        expect('[');
+        enter();
+    }
+
+    public void endArray() {
+        expect(']');
+        leave();
+    }
+
+    // Returns true if the current object or array has more elements. Consumes
+    // the separating comma, which is required before every element but the first.
+    public boolean hasNext() {
+        byte c = peekChar();
+
+        if (c == '}' || c == ']') {
+            return false;
+        }
+
+        long bit = 1L << (depth - 1);
+
+        if ((haveElements & bit) == 0) {
+            if (c == ',') {
+                throw syntaxError("Unexpected ','");
+            }
+            haveElements |= bit;
+        } else {
+            if (c != ',') {
+                throw syntaxError("Expected ','");
+            }
+            pos++;
+            c = peekChar();
+            if (c == '}' || c == ']' || c == ',') {
+                throw syntaxError("Expected a value after ','");
+            }
+        }
+
+        return true;
+    }
+
+    public String nextName() {
+        String name = nextString();
+
+        expect(':');
+        return name;
+    }
+
+    // Allocation-free alternative to nextName(): returns index of the name in
+    // the given table, or -1 if it's not there. See names().
+    public int nextName(byte[][] names) {
+        skipWhitespace();
+        if (pos >= limit || data[pos] != '"') {
+            throw syntaxError("Expected a string");
+        }
+
+        int start = ++pos;
+
+        while (pos < limit && data[pos] != '"') {
+            // Escaped names would never match our tables anyway
+            if (data[pos] == '\\') {
+                pos++;
+            }
+            pos++;
+        }
+
+        if (pos >= limit) {
+            throw syntaxError("Unterminated string");
+        }
+
+        int length = pos++ - start;
+
+        expect(':');
+
+        for (int i = 0; i < names.length; i++) {
+            byte[] name = names[i];
+
+            if (name.length == length && regionMatches(start, name)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    public static byte[][] names(String... names) {
+        byte[][] table = new byte[names.length][];
+
+        for (int i = 0; i < names.length; i++) {
+            table[i] = names[i].getBytes(StandardCharsets.UTF_8);
+        }
+
+        return table;
+    }
+
+    public String nextString() {
+        skipWhitespace();
+        if (pos >= limit || data[pos] != '"') {
+            throw syntaxError("Expected a string");
+        }
+
+        int start = ++pos;
+
+        // Fast path: no escapes, decode directly from the buffer
+        while (pos < limit) {
+            byte c = data[pos];
+
+            if (c == '"') {
+                return new String(data, start, pos++ - start, StandardCharsets.UTF_8);
+            } else if (c == '\\') {
+                return readEscapedString(start);
+            }
+            pos++;
+        }
+
+        throw syntaxError("Unterminated string");
+    }
+
+    public boolean nextBoolean() {
+        skipWhitespace();
+        if (match("true")) {
+            return true;
+        } else if (match("false")) {
+            return false;
+        }
+
+        throw syntaxError("Expected a boolean");
+    }
+
+    public void nextNull() {
+        skipWhitespace();
+        if (!match("null")) {
+            throw syntaxError("Expected null");
+        }
+    }
+
+    public int nextInt() {
+        long value = nextLong();
+
+        if (value != (int) value) {
+            throw syntaxError("Integer out of range");
+        }
+
+        return (int) value;
+    }
+
+    // Like org.json, accepts numbers given as strings, e. g. "ver":"3" in IDENT reply
+    public long nextLong() {
+        skipWhitespace();
+        if (pos < limit && data[pos] == '"') {
+            String str = nextString();
+
+            try {
+                return Long.parseLong(str);
+            } catch (NumberFormatException e) {
+                throw syntaxError("Expected a number");
+            }
+        }
+
+        int start = pos;
+        boolean negative = false;
+        long value = 0;
+
+        if (pos < limit && data[pos] == '-') {
+            negative = true;
+            pos++;
+        }
+
+        int digitsStart = pos;
+        // Accumulated as a negative number, which has the larger range
+        long min = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+
+        while (pos < limit && data[pos] >= '0' && data[pos] <= '9') {
+            int digit = data[pos++] - '0';
+
+            if (value < (min + digit) / 10) {
+                throw syntaxError("Number out of range");
+            }
+            value = value * 10 - digit;
+        }
+
+        if (pos == digitsStart) {
+            throw syntaxError("Expected a number");
+        }
+
+        if (pos < limit && (data[pos] == '.' || data[pos] == 'e' || data[pos] == 'E')) {
+            // Not an integer, this should be rare enough to take a slow path
+            pos = start;
+
+            double d = nextDouble();
+
+            if (!(d >= -0x1p63 && d < 0x1p63)) {
+                throw syntaxError("Number out of range");
+            }
+            return (long) d;
+        }
+
+        return negative ? value : -value;
+    }
+
+    public double nextDouble() {
+        skipWhitespace();
+        int start = pos;
+
+        while (pos < limit && isNumberChar(data[pos])) {
+            pos++;
+        }
+
+        try {
+            return Double.parseDouble(new String(data, start, pos - start, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            throw syntaxError("Expected a number");
+        }
+    }
+
+    // Skips the next value, including all its children. Nothing is allocated.
+    public void skipValue() {
+        skipWhitespace();
+        if (pos >= limit) {
+            throw syntaxError("Unexpected end of data");
+        }
+
+        int depth = 0;
+
+        do {
+            byte c = data[pos];
+
+            switch (c) {
+                case '{':
+                case '[':
+                    depth++;
+                    pos++;
+                    break;
+                case '}':
+                case ']':
+                    depth--;
+                    pos++;
+                    break;
+                case '"':
+                    skipString();
+                    break;
+                default:
+                    pos++;
+                    if (depth == 0) {
+                        // A scalar; consume the rest of the token
+                        while (pos < limit && isScalarChar(data[pos])) {
+                            pos++;
+                        }
+                    }
+                    break;
+            }
+
+            if (depth > 0) {
+                skipWhitespace();
+                if (pos >= limit) {
+                    throw syntaxError("Unterminated object or array");
+                }
+            }
+        } while (depth > 0);
+    }
+
+    // Position of the next value, for getRawValue()
+    public int mark() {
+        skipWhitespace();
+        return pos;
+    }
+
+    // Source text from the mark up to the current position, i. e. of the
+    // value(s) consumed since then
+    public String getRawValue(int mark) {
+        return new String(data, mark, pos - mark, StandardCharsets.UTF_8);
+    }
+
+    private String readEscapedString(int start) {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append(new String(data, start, pos - start, StandardCharsets.UTF_8));
+
+        int chunk = pos;
+
+        while (pos < limit) {
+            byte c = data[pos];
+
+            if (c == '"') {
+                sb.append(new String(data, chunk, pos++ - chunk, StandardCharsets.UTF_8));
+                return sb.toString();
+            } else if (c == '\\') {
+                sb.append(new String(data, chunk, pos - chunk, StandardCharsets.UTF_8));
+                if (++pos >= limit) {
+                    break;
+                }
+
+                c = data[pos++];
+                switch (c) {
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'u':
+                        if (pos + 4 > limit) {
+                            throw syntaxError("Malformed unicode escape");
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(
+                                    new String(data, pos, 4, StandardCharsets.US_ASCII), 16));
+                        } catch (NumberFormatException e) {
+                            throw syntaxError("Malformed unicode escape");
+                        }
+                        pos += 4;
+                        break;
+                    default:
+                        sb.append((char) c);
+                        break;
+                }
+                chunk = pos;
+            } else {
+                pos++;
+            }
+        }
+
+        throw syntaxError("Unterminated string");
+    }
+
+    private void skipString() {
+        pos++; // Opening quote
+        while (pos < limit) {
+            byte c = data[pos++];
+
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                pos++;
+            }
+        }
+
+        throw syntaxError("Unterminated string");
+    }
+
+    private boolean regionMatches(int start, byte[] name) {
+        for (int i = 0; i < name.length; i++) {
+            if (data[start + i] != name[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean match(String literal) {
+        int length = literal.length();
+
+        if (pos + length > limit) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (data[pos + i] != literal.charAt(i)) {
+                return false;
+            }
+        }
+
+        pos += length;
+        return true;
+    }
+
+    private void enter() {
+        if (depth == MAX_DEPTH) {
+            throw syntaxError("Nesting too deep");
+        }
+        haveElements &= ~(1L << depth++);
+    }
+
+    private void leave() {
+        if (depth > 0) {
+            depth--;
+        }
+    }
+
+    private byte peekChar() {
+        skipWhitespace();
+        if (pos >= limit) {
+            throw syntaxError("Unterminated object or array");
+        }
+        return data[pos];
+    }
+
+    private void expect(char c) {
+        skipWhitespace();
+        if (pos >= limit || data[pos] != c) {
+            throw syntaxError("Expected '" + c + "'");
+        }
+        pos++;
+    }
+
+    private void skipWhitespace() {
+        while (pos < limit) {
+            byte c = data[pos];
+
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                break;
+            }
+            pos++;
+        }
+    }
+
+    private static boolean isNumberChar(byte c) {
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E';
+    }
+
+    private static boolean isScalarChar(byte c) {
+        return c != ',' && c != '}' && c != ']' && c != ' ' && c != '\t' && c != '\n' && c != '\r';
+    }
+
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + " at character " + pos);
+    }
+}
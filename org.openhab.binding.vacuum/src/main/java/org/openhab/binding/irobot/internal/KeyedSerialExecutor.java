@@ -0,0 +1,175 @@
+package org.openhab.binding.irobot.internal;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// A set of serial executors, sharing a small thread pool. Tasks, submitted with
+// the same key, are guaranteed to run one at a time, in submission order.
+// Handlers use their thing UID as a key, so that e. g. connect() and dispose()
+// never overlap, even across handler re-creation, without having to keep
+// a dedicated thread per thing.
+public class KeyedSerialExecutor {
+
+    private final Logger logger = LoggerFactory.getLogger(KeyedSerialExecutor.class);
+    private final ThreadPoolExecutor pool;
+    private final Map<String, SerialQueue> queues = new ConcurrentHashMap<>();
+
+    public static class Statistics {
+        public final boolean active;
+        public final int queued;
+        public final long completed;
+
+        Statistics(boolean active, int queued, long completed) {
+            this.active = active;
+            this.queued = queued;
+            this.completed = completed;
+        }
+
+        @Override
+        public String toString() {
+            return "active=" + active + " queued=" + queued + " completed=" + completed;
+        }
+    }
+
+    private class SerialQueue implements Executor {
+        private final String key;
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private final AtomicLong completed = new AtomicLong();
+        private boolean running = false;
+
+        SerialQueue(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            synchronized (this) {
+                tasks.add(task);
+                if (running) {
+                    return;
+                }
+                running = true;
+            }
+
+            submit();
+        }
+
+        private void submit() {
+            try {
+                pool.execute(this::runNext);
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    logger.debug("Executor is shut down, discarding {} tasks for {}", tasks.size(), key);
+                    tasks.clear();
+                    running = false;
+                }
+            }
+        }
+
+        // Runs one task at a time, then gives the thread back to the pool,
+        // so that a busy key doesn't starve the others.
+        private void runNext() {
+            Runnable task;
+
+            synchronized (this) {
+                task = tasks.poll();
+                if (task == null) {
+                    running = false;
+                    return;
+                }
+            }
+
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.warn("Task for {} failed", key, e);
+            }
+
+            completed.incrementAndGet();
+
+            synchronized (this) {
+                if (tasks.isEmpty()) {
+                    running = false;
+                    return;
+                }
+            }
+
+            submit();
+        }
+
+        synchronized boolean isIdle() {
+            return !running && tasks.isEmpty();
+        }
+
+        synchronized Statistics getStatistics() {
+            return new Statistics(running, tasks.size(), completed.get());
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    public KeyedSerialExecutor(String name, int threads) {
+        pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new NamedThreadFactory(name));
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    public Executor getExecutor(String key) {
+        return queues.computeIfAbsent(key, SerialQueue::new);
+    }
+
+    // Forgets the key if it has no pending work. A subsequent getExecutor()
+    // will simply create a new queue.
+    public void release(String key) {
+        queues.computeIfPresent(key, (k, queue) -> queue.isIdle() ? null : queue);
+    }
+
+    public Map<String, Statistics> getStatistics() {
+        Map<String, Statistics> stats = new TreeMap<>();
+
+        queues.forEach((key, queue) -> stats.put(key, queue.getStatistics()));
+        return stats;
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.debug("Some tasks did not complete in time, interrupting");
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        queues.clear();
+    }
+}
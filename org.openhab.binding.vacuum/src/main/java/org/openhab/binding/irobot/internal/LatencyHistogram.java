@@ -0,0 +1,85 @@
+package org.openhab.binding.irobot.internal;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free histogram of durations with power-of-two buckets. Recording is
+// a couple of striped counter increments, so it can stay on all the time,
+// even on hot paths. Bucket N holds values in [2^(N-1), 2^N) nanoseconds
+// (bucket 0 holds zeros), so percentiles are accurate within a factor of two,
+// which is good enough to tell a millisecond from a second.
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+
+        buckets[BUCKETS - Long.numberOfLeadingZeros(nanos)].increment();
+        count.increment();
+        sum.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    // All the getters below return microseconds
+    public double getMean() {
+        long n = count.sum();
+
+        return n == 0 ? 0 : (double) sum.sum() / n / 1000;
+    }
+
+    public double getMax() {
+        return max.get() / 1000.0;
+    }
+
+    // Upper bound of the bucket the percentile falls into, e. g. getPercentile(0.99)
+    public double getPercentile(double fraction) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long target = (long) Math.ceil(fraction * total);
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                // Never report more than the actual maximum
+                return Math.min(Math.scalb(1.0, i), max.get()) / 1000;
+            }
+        }
+
+        return getMax();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1f p50=%.1f p99=%.1f max=%.1f us", getCount(), getMean(),
+                getPercentile(0.5), getPercentile(0.99), getMax());
+    }
+}
@@ -0,0 +1,214 @@
+package org.openhab.binding.irobot.internal;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.net.ssl.SSLEngine;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ClientAuth;
+import io.netty.handler.ssl.IdentityCipherSuiteFilter;
+import io.netty.handler.ssl.JdkSslContext;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslHandshakeCompletionEvent;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.ScheduledFuture;
+
+// Asynchronous password requests. A robot gives out its password only for
+// about 30 seconds after its HOME button has been held, and we don't know
+// when that happens, so pairing means polling. With blocking sockets every
+// robot being paired would hold a thread; here all requests share a single
+// Netty event loop.
+// A request keeps its TLS connection open and repeats the password request
+// every RESEND_INTERVAL until the robot answers or the timeout expires, so
+// the robot's pairing window is covered by one handshake. The SSLContext is
+// the binding's shared one, so sessions are resumed across requests.
+public class PasswordRequester {
+
+    private static final int CONNECT_TIMEOUT = 5000; // In milliseconds
+    private static final int RESEND_INTERVAL = 2000; // In milliseconds
+
+    private final EventLoopGroup group;
+    private @Nullable SslContext sslContext;
+
+    public PasswordRequester(String threadName) {
+        group = new NioEventLoopGroup(1, new DefaultThreadFactory(threadName, true));
+    }
+
+    public void shutdown() {
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+    }
+
+    // Completes with the password; exceptionally if the connection fails, or
+    // the robot doesn't give the password within the timeout (in milliseconds).
+    // Cancelling the future closes the connection.
+    public CompletableFuture<String> request(InetAddress host, int port, long timeout,
+            @Nullable LatencyHistogram handshakeTime) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        SslContext ssl;
+
+        try {
+            ssl = getSslContext();
+        } catch (GeneralSecurityException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        Bootstrap bootstrap = new Bootstrap().group(group).channel(NioSocketChannel.class)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel channel) {
+                        // Peer host and port make up the key for session cache
+                        channel.pipeline().addLast(ssl.newHandler(channel.alloc(), host.getHostAddress(), port),
+                                new PasswordDecoder(result, handshakeTime));
+                    }
+                });
+        ChannelFuture connect = bootstrap.connect(host, port);
+        Channel channel = connect.channel();
+
+        connect.addListener(f -> {
+            if (!f.isSuccess()) {
+                result.completeExceptionally(f.cause());
+            }
+        });
+
+        ScheduledFuture<?> timer = channel.eventLoop().schedule(() -> {
+            result.completeExceptionally(new TimeoutException("No password from " + host.getHostAddress()));
+        }, timeout, TimeUnit.MILLISECONDS);
+
+        result.whenComplete((password, error) -> {
+            timer.cancel(false);
+            channel.close();
+        });
+
+        return result;
+    }
+
+    private synchronized SslContext getSslContext() throws GeneralSecurityException {
+        SslContext ssl = sslContext;
+
+        if (ssl == null) {
+            // Ciphers and protocols are left as the SSLContext has them
+            ssl = new JdkSslContext(TlsContext.getContext(), true, null, IdentityCipherSuiteFilter.INSTANCE,
+                    ApplicationProtocolConfig.DISABLED, ClientAuth.NONE, null, false);
+            sslContext = ssl;
+        }
+
+        return ssl;
+    }
+
+    // Sends password requests once TLS is up and picks password replies out of
+    // the incoming stream. Everything runs on the channel's event loop.
+    private static class PasswordDecoder extends ByteToMessageDecoder {
+        private final CompletableFuture<String> result;
+        private final @Nullable LatencyHistogram handshakeTime;
+        private final long started = System.currentTimeMillis();
+        private final long start = System.nanoTime();
+        private @Nullable ScheduledFuture<?> resend;
+
+        PasswordDecoder(CompletableFuture<String> result, @Nullable LatencyHistogram handshakeTime) {
+            this.result = result;
+            this.handshakeTime = handshakeTime;
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object event) throws Exception {
+            if (event instanceof SslHandshakeCompletionEvent) {
+                SslHandshakeCompletionEvent handshake = (SslHandshakeCompletionEvent) event;
+
+                if (handshake.isSuccess()) {
+                    SSLEngine engine = ctx.pipeline().get(SslHandler.class).engine();
+                    long elapsed = System.nanoTime() - start;
+
+                    // A resumed session was created before we've started
+                    TlsContext.recordHandshake(elapsed, engine.getSession().getCreationTime() < started);
+                    if (handshakeTime != null) {
+                        handshakeTime.record(elapsed);
+                    }
+
+                    sendRequest(ctx);
+                    resend = ctx.executor().scheduleAtFixedRate(() -> sendRequest(ctx), RESEND_INTERVAL,
+                            RESEND_INTERVAL, TimeUnit.MILLISECONDS);
+                } else {
+                    result.completeExceptionally(handshake.cause());
+                }
+            }
+
+            super.userEventTriggered(ctx, event);
+        }
+
+        private void sendRequest(ChannelHandlerContext ctx) {
+            ctx.writeAndFlush(Unpooled.wrappedBuffer(RawMQTT.getPasswordRequest()));
+        }
+
+        @Override
+        protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+            ByteBuffer data = in.nioBuffer();
+            int start = data.position();
+            RawMQTT.Packet packet;
+
+            while ((packet = RawMQTT.parsePacket(data)) != null) {
+                if (packet.isValidPasswdPacket()) {
+                    String password = new RawMQTT.PasswdPacket(packet).getPassword();
+
+                    // Non-zero status means the robot isn't ready yet; keep asking
+                    if (password != null && !password.isEmpty()) {
+                        result.complete(password);
+                    }
+                }
+            }
+
+            in.skipBytes(data.position() - start);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            stopResending();
+            result.completeExceptionally(new IOException("Connection closed by the robot"));
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            result.completeExceptionally(cause);
+            ctx.close();
+        }
+
+        @Override
+        protected void handlerRemoved0(ChannelHandlerContext ctx) {
+            stopResending();
+        }
+
+        private void stopResending() {
+            ScheduledFuture<?> r = resend;
+
+            if (r != null) {
+                r.cancel(false);
+                resend = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.openhab.binding.irobot.internal;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+// Last known values of thing properties. Robots report their firmware versions
+// over and over, and every updateProperty() call may result in a Thing storage
+// write and listener notifications. Here changes are collected while a message
+// is being processed, then applied with a single updateProperties() call;
+// values, which are the same as before, cost just a map lookup.
+public class PropertyCache {
+
+    private final Map<String, String> values = new HashMap<>();
+    private final Map<String, String> changes = new HashMap<>();
+
+    // Starts over from what the thing already has
+    public void reset(Map<String, String> properties) {
+        values.clear();
+        values.putAll(properties);
+        changes.clear();
+    }
+
+    public void put(String property, String value) {
+        if (value.equals(values.get(property))) {
+            // A previously collected change may have been reverted
+            changes.remove(property);
+        } else {
+            changes.put(property, value);
+        }
+    }
+
+    // Returns properties, changed since the last call, and considers them applied
+    public Map<String, String> takeChanges() {
+        if (changes.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, String> result = new HashMap<>(changes);
+
+        values.putAll(changes);
+        changes.clear();
+        return result;
+    }
+}
@@ -1,33 +1,30 @@
 package org.openhab.binding.irobot.internal;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.InetAddress;
-import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 
-import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 
-// A "raw MQTT" client for sending custom "get password" request.
+// "Raw MQTT" packets for the custom "get password" request.
 // Seems pretty much reinventing a bicycle, but it looks like built-in OpenHAB MQTT
-// library doesn't provide for sending and receiving custom packets.
+// library doesn't provide for sending and receiving custom packets. The transport
+// is up to the caller, see PasswordRequester.
 public class RawMQTT {
     public static final int ROOMBA_MQTT_PORT = 8883;
 
-    private Socket socket;
+    private static final int MAX_LENGTH_BYTES = 4;
+    // Password replies are tiny; anything bigger is garbage
+    private static final int MAX_PACKET_SIZE = 4096;
 
     public static class Packet {
         public byte message;
         public byte[] payload;
 
-        Packet(byte msg, byte[] data) {
+        public Packet(byte msg, byte[] data) {
             message = msg;
             payload = data;
         }
@@ -95,22 +92,13 @@ public class RawMQTT {
         }
     }
 
-    public static TrustManager[] getTrustManagers() {
-        return new TrustManager[] { new MQTTTrustManager() };
-    }
-
-    public RawMQTT(InetAddress host, int port) throws KeyManagementException, NoSuchAlgorithmException, IOException {
-        SSLContext sc = SSLContext.getInstance("SSL");
-
-        sc.init(null, getTrustManagers(), new java.security.SecureRandom());
-        socket = sc.getSocketFactory().createSocket(host, ROOMBA_MQTT_PORT);
-    }
+    private static final TrustManager[] trustManagers = { new MQTTTrustManager() };
 
-    public void close() throws IOException {
-        socket.close();
+    public static TrustManager[] getTrustManagers() {
+        return trustManagers;
     }
 
-    public void requestPassword() throws IOException {
+    public static byte[] getPasswordRequest() {
         final byte[] passwdRequest = new byte[7];
         ByteBuffer buffer = ByteBuffer.wrap(passwdRequest).order(ByteOrder.LITTLE_ENDIAN);
 
@@ -119,47 +107,53 @@ public class RawMQTT {
         buffer.putInt(PasswdPacket.MAGIC);
         buffer.put((byte) 0);
 
-        socket.getOutputStream().write(passwdRequest);
+        return passwdRequest;
     }
 
-    public Packet readPacket() throws IOException {
-        byte[] header = new byte[2];
-        int l = receive(header);
-
-        if (l < header.length) {
-            return null;
-        }
-
-        byte[] data = new byte[header[1]];
-        l = receive(data);
+    // Extracts the next complete packet from [position, limit) of the buffer and
+    // advances the position past it. Returns null and leaves the position as it
+    // is, if the packet hasn't been received completely yet.
+    public static Packet parsePacket(ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        int available = buffer.remaining();
 
-        if (l != header[1]) {
+        if (available < 2) {
             return null;
-        } else {
-            return new Packet(header[0], data);
         }
-    }
-
-    private int receive(byte[] data) throws IOException {
-        int received = 0;
-        byte[] buffer = new byte[1024];
-        InputStream in = socket.getInputStream();
 
-        while (received < data.length) {
-            int l = in.read(buffer);
+        // Remaining length is encoded using a variable number of bytes, 7 bits per byte,
+        // least significant first. The MSB is the continuation flag.
+        int length = 0;
+        int offset = 1;
+        int shift = 0;
+        byte b;
 
-            if (l <= 0) {
-                break; // EOF
+        do {
+            if (offset >= available) {
+                return null; // Incomplete header
             }
-
-            if (received + l > data.length) {
-                l = data.length - received;
+            if (offset > MAX_LENGTH_BYTES) {
+                throw new IOException("Malformed MQTT remaining length");
             }
 
-            System.arraycopy(buffer, 0, data, received, l);
-            received += l;
+            b = buffer.get(start + offset++);
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        if (length > MAX_PACKET_SIZE) {
+            throw new IOException("Packet too large: " + length);
         }
+        if (available < offset + length) {
+            return null;
+        }
+
+        byte message = buffer.get(start);
+        byte[] payload = new byte[length];
+
+        buffer.position(start + offset);
+        buffer.get(payload);
 
-        return received;
+        return new Packet(message, payload);
     }
 }
@@ -0,0 +1,97 @@
+package org.openhab.binding.irobot.internal;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Decides how long to wait before the next connection attempt. The first retry
+// is immediate, because most disconnects are short Wi-Fi blips. After that
+// the delay grows exponentially up to the given maximum, with some random
+// jitter, so that a robot, which is off, doesn't get hammered, and several
+// things don't retry in lockstep. Backoff is reset once a connection has
+// stayed up for long enough.
+public class ReconnectPolicy {
+
+    private final long initialDelay;
+    private final long maxDelay;
+    private final long stableTime;
+
+    private int failures = 0;
+    private long connectedSince = -1;
+    private long disconnectedSince;
+    private boolean haveConnected = false;
+
+    // Statistics
+    private long totalAttempts = 0;
+    private long reconnects = 0;
+    private long lastReconnectTime = -1;
+
+    // All times are in milliseconds
+    public ReconnectPolicy(long initialDelay, long maxDelay, long stableTime) {
+        this.initialDelay = initialDelay;
+        this.maxDelay = Math.max(initialDelay, maxDelay);
+        this.stableTime = stableTime;
+        disconnectedSince = System.currentTimeMillis();
+    }
+
+    public synchronized long nextDelay() {
+        long delay;
+
+        if (failures == 0) {
+            delay = 0;
+        } else {
+            // Don't let the shift overflow
+            delay = Math.min(maxDelay, initialDelay << Math.min(failures - 1, 20));
+            // "Equal jitter": somewhere between a half and the full delay
+            delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        }
+
+        failures++;
+        totalAttempts++;
+        return delay;
+    }
+
+    public synchronized void onConnected() {
+        long now = System.currentTimeMillis();
+
+        connectedSince = now;
+        if (disconnectedSince >= 0) {
+            lastReconnectTime = now - disconnectedSince;
+            disconnectedSince = -1;
+            // The first connect isn't a reconnect
+            if (haveConnected) {
+                reconnects++;
+            }
+        }
+        haveConnected = true;
+    }
+
+    public synchronized void onDisconnected() {
+        long now = System.currentTimeMillis();
+
+        if (connectedSince >= 0 && now - connectedSince >= stableTime) {
+            failures = 0;
+        }
+
+        connectedSince = -1;
+        if (disconnectedSince < 0) {
+            disconnectedSince = now;
+        }
+    }
+
+    // Number of attempts since the connection was last stable
+    public synchronized int getFailures() {
+        return failures;
+    }
+
+    public synchronized long getTotalAttempts() {
+        return totalAttempts;
+    }
+
+    public synchronized long getReconnects() {
+        return reconnects;
+    }
+
+    // How long it took to get connected last time, -1 if never connected
+    public synchronized long getLastReconnectTime() {
+        return lastReconnectTime;
+    }
+}
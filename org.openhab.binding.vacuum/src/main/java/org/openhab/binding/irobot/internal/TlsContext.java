@@ -0,0 +1,68 @@
+package org.openhab.binding.irobot.internal;
+
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+
+// TLS setup, shared by the whole binding. Robots have quite weak CPUs, so full
+// TLS handshake is expensive for them. A single SSLContext keeps a client-side
+// session cache, keyed by robot address and port, so repeated connections to
+// the same robot can resume the session instead of doing the full handshake.
+// This only covers password requests. HiveMQ builds a new SslContext from the
+// trust manager for every MQTT connection and offers no way to pass ours in,
+// so MQTT connections always do the full handshake.
+public class TlsContext {
+
+    private static final int SESSION_CACHE_SIZE = 256;
+    private static final int SESSION_TIMEOUT = 24 * 60 * 60; // In seconds
+
+    private static SSLContext context;
+
+    // Handshake statistics
+    private static final AtomicLong handshakes = new AtomicLong();
+    private static final AtomicLong resumed = new AtomicLong();
+    private static final AtomicLong handshakeNanos = new AtomicLong();
+
+    public static synchronized SSLContext getContext() throws NoSuchAlgorithmException, KeyManagementException {
+        if (context == null) {
+            SSLContext ctx = SSLContext.getInstance("TLS");
+
+            ctx.init(null, RawMQTT.getTrustManagers(), new java.security.SecureRandom());
+
+            SSLSessionContext sessions = ctx.getClientSessionContext();
+
+            sessions.setSessionCacheSize(SESSION_CACHE_SIZE);
+            sessions.setSessionTimeout(SESSION_TIMEOUT);
+            context = ctx;
+        }
+
+        return context;
+    }
+
+    // Called when a handshake, done by Netty, is complete
+    static void recordHandshake(long nanos, boolean wasResumed) {
+        handshakes.incrementAndGet();
+        handshakeNanos.addAndGet(nanos);
+        if (wasResumed) {
+            resumed.incrementAndGet();
+        }
+    }
+
+    public static long getHandshakeCount() {
+        return handshakes.get();
+    }
+
+    public static long getResumedCount() {
+        return resumed.get();
+    }
+
+    // Average handshake duration in milliseconds
+    public static double getAverageHandshakeTime() {
+        long count = handshakes.get();
+
+        return count == 0 ? 0 : handshakeNanos.get() / 1e6 / count;
+    }
+}
@@ -0,0 +1,139 @@
+package org.openhab.binding.irobot.roomba;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Rate limit with a deadband for a noisy numeric channel, like signal strength
+// or battery level. A new value is published right away if it differs from
+// the last published one by at least the deadband, and at least minInterval
+// has passed since the last publish. Otherwise it's held back, and the last
+// held value is published later: after minInterval if it's beyond the
+// deadband, or after maxInterval if it's not. So small changes are delayed,
+// but never lost, and the channel always ends up with the final value.
+public class ChannelThrottle {
+
+    @FunctionalInterface
+    public interface Publisher {
+        void publish(int value);
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+    private final Publisher publisher;
+    private final long minInterval;
+    private final long maxInterval;
+    private final int deadband;
+
+    private boolean havePublished = false;
+    private int published;
+    private long publishTime;
+    private boolean havePending = false;
+    private int pending;
+    private ScheduledFuture<?> flushJob = null;
+    private long flushTime;
+
+    // Intervals are in milliseconds. Delayed values are published through the
+    // executor, so that they don't race with offer().
+    public ChannelThrottle(ScheduledExecutorService scheduler, Executor executor, Publisher publisher,
+            long minInterval, long maxInterval, int deadband) {
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.publisher = publisher;
+        this.minInterval = Math.max(minInterval, 0);
+        this.maxInterval = Math.max(maxInterval, this.minInterval);
+        this.deadband = Math.max(deadband, 1);
+    }
+
+    // Returns false if the value has been held back
+    public boolean offer(int value) {
+        synchronized (this) {
+            if (havePublished && value == published) {
+                // Went back to where it was, nothing to flush anymore
+                havePending = false;
+                return false;
+            }
+
+            long now = System.currentTimeMillis();
+            long due = getDueTime(value);
+
+            if (now < due) {
+                pending = value;
+                havePending = true;
+                scheduleFlush(due, now);
+                return false;
+            }
+
+            setPublished(value, now);
+        }
+
+        publisher.publish(value);
+        return true;
+    }
+
+    private void flush() {
+        int value;
+
+        synchronized (this) {
+            flushJob = null;
+            if (!havePending) {
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            long due = getDueTime(pending);
+
+            if (now < due) {
+                // Only small changes left, they wait for maxInterval
+                scheduleFlush(due, now);
+                return;
+            }
+
+            value = pending;
+            setPublished(value, now);
+        }
+
+        publisher.publish(value);
+    }
+
+    private long getDueTime(int value) {
+        if (!havePublished) {
+            return 0;
+        }
+
+        return publishTime + (Math.abs(value - published) >= deadband ? minInterval : maxInterval);
+    }
+
+    private void scheduleFlush(long due, long now) {
+        if (flushJob != null) {
+            if (flushTime <= due) {
+                return;
+            }
+            flushJob.cancel(false);
+        }
+
+        flushTime = due;
+        flushJob = scheduler.schedule(() -> executor.execute(this::flush), due - now, TimeUnit.MILLISECONDS);
+    }
+
+    private void setPublished(int value, long now) {
+        published = value;
+        publishTime = now;
+        havePublished = true;
+        havePending = false;
+        if (flushJob != null) {
+            flushJob.cancel(false);
+            flushJob = null;
+        }
+    }
+
+    // Drops whatever has not been published yet
+    public synchronized void cancel() {
+        if (flushJob != null) {
+            flushJob.cancel(false);
+            flushJob = null;
+        }
+        havePending = false;
+    }
+}
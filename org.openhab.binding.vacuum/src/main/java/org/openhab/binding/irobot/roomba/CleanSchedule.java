@@ -0,0 +1,208 @@
+package org.openhab.binding.irobot.roomba;
+
+import java.util.Arrays;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openhab.binding.irobot.internal.JsonReader;
+
+// Weekly cleaning schedule. Roomba reports it as:
+// "cleanSchedule":{"cycle":["none","start","start","start","start","none","none"],
+// "h":[9,12,12,12,12,12,9],"m":[0,0,0,0,0,0,0]}
+// Days are numbered from Sunday. Instances are immutable; modifiers return
+// a new schedule.
+public final class CleanSchedule {
+    public static final int DAYS = 7;
+
+    private static final String CYCLE_START = "start";
+    private static final String CYCLE_NONE = "none";
+
+    private final int cycleMask;
+    private final byte[] hours;
+    private final byte[] minutes;
+    // Some robots might not report times, then we never send them back
+    private final boolean haveTimes;
+
+    public CleanSchedule(int cycleMask) {
+        this(cycleMask, new byte[DAYS], new byte[DAYS], false);
+    }
+
+    private CleanSchedule(int cycleMask, byte[] hours, byte[] minutes, boolean haveTimes) {
+        this.cycleMask = cycleMask & ((1 << DAYS) - 1);
+        this.hours = hours;
+        this.minutes = minutes;
+        this.haveTimes = haveTimes;
+    }
+
+    // Returns null if there's no "cycle", so that a partial update doesn't
+    // switch every day off
+    public static @Nullable CleanSchedule parse(JsonReader reader) {
+        int mask = 0;
+        byte[] hours = new byte[DAYS];
+        byte[] minutes = new byte[DAYS];
+        boolean haveCycle = false;
+        boolean haveHours = false;
+        boolean haveMinutes = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "cycle":
+                    reader.beginArray();
+                    for (int i = 0; reader.hasNext(); i++) {
+                        boolean on = reader.nextString().equals(CYCLE_START);
+
+                        if (on && i < DAYS) {
+                            mask |= 1 << i;
+                        }
+                    }
+                    reader.endArray();
+                    haveCycle = true;
+                    break;
+                case "h":
+                    readArray(reader, hours);
+                    haveHours = true;
+                    break;
+                case "m":
+                    readArray(reader, minutes);
+                    haveMinutes = true;
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        return haveCycle ? new CleanSchedule(mask, hours, minutes, haveHours && haveMinutes) : null;
+    }
+
+    private static void readArray(JsonReader reader, byte[] values) {
+        reader.beginArray();
+        for (int i = 0; reader.hasNext(); i++) {
+            int value = reader.nextInt();
+
+            if (i < DAYS) {
+                values[i] = (byte) value;
+            }
+        }
+        reader.endArray();
+    }
+
+    public int getCycleMask() {
+        return cycleMask;
+    }
+
+    public boolean isEnabled(int day) {
+        return (cycleMask & (1 << day)) != 0;
+    }
+
+    public boolean haveTimes() {
+        return haveTimes;
+    }
+
+    public int getHour(int day) {
+        return hours[day];
+    }
+
+    public int getMinute(int day) {
+        return minutes[day];
+    }
+
+    public CleanSchedule withCycleMask(int mask) {
+        return new CleanSchedule(mask, hours, minutes, haveTimes);
+    }
+
+    public CleanSchedule withDay(int day, boolean enable) {
+        return withCycleMask(enable ? cycleMask | (1 << day) : cycleMask & ~(1 << day));
+    }
+
+    // Only possible once the robot has reported times. Otherwise all the other
+    // days would be sent as 00:00.
+    public CleanSchedule withTime(int day, int hour, int minute) {
+        if (!haveTimes) {
+            throw new IllegalStateException("Schedule times not known yet");
+        }
+
+        byte[] newHours = hours.clone();
+        byte[] newMinutes = minutes.clone();
+
+        newHours[day] = (byte) hour;
+        newMinutes[day] = (byte) minute;
+        return new CleanSchedule(cycleMask, newHours, newMinutes, true);
+    }
+
+    // Formats start time for the given day as HH:MM
+    public String formatTime(int day) {
+        return String.format("%02d:%02d", hours[day], minutes[day]);
+    }
+
+    // Parses HH:MM and returns {hour, minute}
+    public static int[] parseTime(String time) {
+        String[] parts = time.trim().split(":");
+
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid time: " + time);
+        }
+
+        int hour = Integer.parseInt(parts[0]);
+        int minute = Integer.parseInt(parts[1]);
+
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+            throw new IllegalArgumentException("Invalid time: " + time);
+        }
+
+        return new int[] { hour, minute };
+    }
+
+    public JSONObject toJSON() throws JSONException {
+        JSONObject schedule = new JSONObject();
+        JSONArray cycle = new JSONArray();
+
+        for (int i = 0; i < DAYS; i++) {
+            cycle.put(isEnabled(i) ? CYCLE_START : CYCLE_NONE);
+        }
+        schedule.put("cycle", cycle);
+
+        if (haveTimes) {
+            JSONArray h = new JSONArray();
+            JSONArray m = new JSONArray();
+
+            for (int i = 0; i < DAYS; i++) {
+                h.put(hours[i]);
+                m.put(minutes[i]);
+            }
+            schedule.put("h", h);
+            schedule.put("m", m);
+        }
+
+        return schedule;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CleanSchedule)) {
+            return false;
+        }
+
+        CleanSchedule other = (CleanSchedule) obj;
+
+        return cycleMask == other.cycleMask && haveTimes == other.haveTimes && Arrays.equals(hours, other.hours)
+                && Arrays.equals(minutes, other.minutes);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * cycleMask + Arrays.hashCode(hours)) + Arrays.hashCode(minutes);
+    }
+
+    @Override
+    public String toString() {
+        return toJSON().toString();
+    }
+}
@@ -0,0 +1,115 @@
+package org.openhab.binding.irobot.roomba;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Outgoing commands for a robot. While connected, commands go straight out.
+// While the connection is down they are held here and sent in order once
+// it's up again. Every command has a time to live, so that e. g. an old
+// "start" doesn't suddenly get executed an hour later. If the queue
+// overflows, the oldest command is dropped.
+public class CommandQueue {
+
+    @FunctionalInterface
+    public interface Publisher {
+        void publish(String topic, byte[] payload);
+    }
+
+    private static class Command {
+        final String topic;
+        final byte[] payload;
+        final long expires;
+
+        Command(String topic, byte[] payload, long expires) {
+            this.topic = topic;
+            this.payload = payload;
+            this.expires = expires;
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(CommandQueue.class);
+    private final ArrayDeque<Command> queue = new ArrayDeque<>();
+    private final int capacity;
+    private final long ttl;
+    private Publisher publisher = null;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    // TTL is in milliseconds
+    public CommandQueue(int capacity, long ttl) {
+        this.capacity = capacity;
+        this.ttl = ttl;
+    }
+
+    public synchronized void send(String topic, byte[] payload) {
+        if (queue.size() >= capacity) {
+            queue.poll();
+            dropped.incrementAndGet();
+            logger.debug("Command queue is full, dropping the oldest command");
+        }
+
+        queue.add(new Command(topic, payload, System.currentTimeMillis() + ttl));
+        flush();
+    }
+
+    // Connection is up, send whatever has been accumulated
+    public synchronized void online(Publisher publisher) {
+        this.publisher = publisher;
+        flush();
+    }
+
+    public synchronized void offline() {
+        publisher = null;
+    }
+
+    public synchronized void clear() {
+        queue.clear();
+    }
+
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    public long getExpiredCount() {
+        return expired.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private void flush() {
+        long now = System.currentTimeMillis();
+        Command command;
+
+        while (publisher != null && (command = queue.peek()) != null) {
+            if (command.expires < now) {
+                queue.poll();
+                expired.incrementAndGet();
+                logger.debug("Command to {} has expired", command.topic);
+                continue;
+            }
+
+            try {
+                publisher.publish(command.topic, command.payload);
+            } catch (RuntimeException e) {
+                // Connection has probably died; keep the command for the next time
+                logger.debug("Failed to send command to {}: {}", command.topic, e.toString());
+                publisher = null;
+                break;
+            }
+
+            queue.poll();
+            sent.incrementAndGet();
+        }
+    }
+}
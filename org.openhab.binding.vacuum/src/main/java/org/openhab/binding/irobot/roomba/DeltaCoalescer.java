@@ -0,0 +1,98 @@
+package org.openhab.binding.irobot.roomba;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+
+// Collects "delta" state changes for a short time and sends them in a single
+// publish. A rule, changing several settings at once, would otherwise produce
+// a burst of messages, which Roomba doesn't like. If the same key is changed
+// several times, the last value wins.
+// In "flush on idle" mode the window is restarted by every change, so the
+// delta goes out once commands stop coming, but never later than
+// MAX_IDLE_WINDOWS windows after the first change.
+// flush() sends while holding the lock, so once it has returned, everything
+// put before has been handed to the sender. Anything, which must not overtake
+// pending changes, is sent after a flush().
+public class DeltaCoalescer {
+
+    @FunctionalInterface
+    public interface Sender {
+        void sendDelta(JSONObject state);
+    }
+
+    private static final int MAX_IDLE_WINDOWS = 10;
+
+    private final ScheduledExecutorService scheduler;
+    private final Sender sender;
+    private final long window;
+    private final boolean flushOnIdle;
+
+    private JSONObject pending = null;
+    private long firstChange;
+    private ScheduledFuture<?> flushJob = null;
+
+    // Window is in milliseconds; zero disables coalescing
+    public DeltaCoalescer(ScheduledExecutorService scheduler, Sender sender, long window, boolean flushOnIdle) {
+        this.scheduler = scheduler;
+        this.sender = sender;
+        this.window = window;
+        this.flushOnIdle = flushOnIdle;
+    }
+
+    public void put(JSONObject state) {
+        if (window <= 0) {
+            sender.sendDelta(state);
+            return;
+        }
+
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+
+            if (pending == null) {
+                pending = new JSONObject();
+                firstChange = now;
+            }
+
+            for (String key : state.keySet()) {
+                pending.put(key, state.get(key));
+            }
+
+            if (flushOnIdle) {
+                long delay = Math.min(window, firstChange + MAX_IDLE_WINDOWS * window - now);
+
+                if (flushJob != null) {
+                    flushJob.cancel(false);
+                }
+                flushJob = scheduler.schedule(this::flush, Math.max(delay, 0), TimeUnit.MILLISECONDS);
+            } else if (flushJob == null) {
+                flushJob = scheduler.schedule(this::flush, window, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    public synchronized void flush() {
+        JSONObject state = pending;
+
+        if (flushJob != null) {
+            flushJob.cancel(false);
+            flushJob = null;
+        }
+
+        pending = null;
+        if (state != null) {
+            sender.sendDelta(state);
+        }
+    }
+
+    // Drops whatever has not been sent yet
+    public synchronized void cancel() {
+        if (flushJob != null) {
+            flushJob.cancel(false);
+            flushJob = null;
+        }
+        pending = null;
+    }
+}
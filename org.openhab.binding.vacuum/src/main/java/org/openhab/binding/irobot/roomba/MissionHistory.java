@@ -0,0 +1,197 @@
+package org.openhab.binding.irobot.roomba;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Fixed-size ring of completed missions, kept in a memory-mapped file, so that
+// it survives restarts. Records are fixed-size binary, appending one is O(1)
+// and doesn't allocate anything. Sums for rolling averages are maintained
+// incrementally.
+//
+// File layout (little endian):
+// Header: magic, version, capacity, count, head (next slot to write), all ints
+// Record: timestamp (long), nMssn, sqft, mssnM, expireM, rechrgM (ints),
+// error (short), initiator, cycle (bytes)
+public class MissionHistory implements Closeable {
+
+    private static final int MAGIC = 0x4d53534e; // "MSSN"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 32;
+
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_CAPACITY = 8;
+    private static final int H_COUNT = 12;
+    private static final int H_HEAD = 16;
+
+    private static final int R_TIMESTAMP = 0;
+    private static final int R_NMSSN = 8;
+    private static final int R_SQFT = 12;
+    private static final int R_MSSNM = 16;
+    private static final int R_EXPIREM = 20;
+    private static final int R_RECHRGM = 24;
+    private static final int R_ERROR = 28;
+    private static final int R_INITIATOR = 30;
+    private static final int R_CYCLE = 31;
+
+    // Codes for strings, so that records stay fixed-size
+    public static final byte INITIATOR_UNKNOWN = 0;
+    public static final byte INITIATOR_LOCAL_APP = 1;
+    public static final byte INITIATOR_REMOTE_APP = 2;
+    public static final byte INITIATOR_SCHEDULE = 3;
+    public static final byte INITIATOR_MANUAL = 4;
+
+    public static final byte CYCLE_OTHER = 0;
+    public static final byte CYCLE_CLEAN = 1;
+    public static final byte CYCLE_SPOT = 2;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private int count;
+    private int head;
+    private long totalArea;
+    private long totalDuration;
+
+    private MissionHistory(FileChannel channel, int capacity) throws IOException {
+        this.channel = channel;
+        this.capacity = capacity;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.getInt(H_MAGIC) != MAGIC || buffer.getInt(H_VERSION) != VERSION
+                || buffer.getInt(H_CAPACITY) != capacity) {
+            // New or incompatible file, start from scratch
+            buffer.putInt(H_MAGIC, MAGIC);
+            buffer.putInt(H_VERSION, VERSION);
+            buffer.putInt(H_CAPACITY, capacity);
+            buffer.putInt(H_COUNT, 0);
+            buffer.putInt(H_HEAD, 0);
+        }
+
+        count = Math.min(Math.max(buffer.getInt(H_COUNT), 0), capacity);
+        head = Math.min(Math.max(buffer.getInt(H_HEAD), 0), capacity - 1);
+
+        for (int i = 0; i < count; i++) {
+            int offset = recordOffset(i);
+
+            totalArea += buffer.getInt(offset + R_SQFT);
+            totalDuration += buffer.getInt(offset + R_MSSNM);
+        }
+    }
+
+    public static MissionHistory open(Path file, int capacity) throws IOException {
+        Files.createDirectories(file.getParent());
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        try {
+            return new MissionHistory(channel, capacity);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public synchronized void append(long timestamp, int nMssn, int sqft, int mssnM, int expireM, int rechrgM,
+            int error, byte initiator, byte cycle) {
+        int offset = recordOffset(head);
+
+        if (count == capacity) {
+            // Overwriting the oldest record
+            totalArea -= buffer.getInt(offset + R_SQFT);
+            totalDuration -= buffer.getInt(offset + R_MSSNM);
+        } else {
+            count++;
+        }
+
+        buffer.putLong(offset + R_TIMESTAMP, timestamp);
+        buffer.putInt(offset + R_NMSSN, nMssn);
+        buffer.putInt(offset + R_SQFT, sqft);
+        buffer.putInt(offset + R_MSSNM, mssnM);
+        buffer.putInt(offset + R_EXPIREM, expireM);
+        buffer.putInt(offset + R_RECHRGM, rechrgM);
+        buffer.putShort(offset + R_ERROR, (short) error);
+        buffer.put(offset + R_INITIATOR, initiator);
+        buffer.put(offset + R_CYCLE, cycle);
+
+        totalArea += sqft;
+        totalDuration += mssnM;
+
+        head = (head + 1) % capacity;
+        buffer.putInt(H_COUNT, count);
+        buffer.putInt(H_HEAD, head);
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    // Values of the most recent mission; -1 if there's none
+    public synchronized int getLastArea() {
+        return count == 0 ? -1 : buffer.getInt(lastOffset() + R_SQFT);
+    }
+
+    public synchronized int getLastDuration() {
+        return count == 0 ? -1 : buffer.getInt(lastOffset() + R_MSSNM);
+    }
+
+    public synchronized long getLastTimestamp() {
+        return count == 0 ? -1 : buffer.getLong(lastOffset() + R_TIMESTAMP);
+    }
+
+    public synchronized double getAverageArea() {
+        return count == 0 ? 0 : (double) totalArea / count;
+    }
+
+    public synchronized double getAverageDuration() {
+        return count == 0 ? 0 : (double) totalDuration / count;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    public static byte encodeInitiator(String initiator) {
+        switch (initiator) {
+            case "localApp":
+                return INITIATOR_LOCAL_APP;
+            case "rmtApp":
+                return INITIATOR_REMOTE_APP;
+            case "schedule":
+                return INITIATOR_SCHEDULE;
+            case "manual":
+                return INITIATOR_MANUAL;
+            default:
+                return INITIATOR_UNKNOWN;
+        }
+    }
+
+    public static byte encodeCycle(String cycle) {
+        switch (cycle) {
+            case "clean":
+                return CYCLE_CLEAN;
+            case "spot":
+                return CYCLE_SPOT;
+            default:
+                return CYCLE_OTHER;
+        }
+    }
+
+    private int lastOffset() {
+        return recordOffset((head + capacity - 1) % capacity);
+    }
+
+    private static int recordOffset(int index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+}
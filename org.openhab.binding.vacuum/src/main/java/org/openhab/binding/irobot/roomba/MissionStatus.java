@@ -0,0 +1,154 @@
+package org.openhab.binding.irobot.roomba;
+
+import static org.openhab.binding.irobot.IRobotBindingConstants.*;
+
+import java.util.Objects;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openhab.binding.irobot.internal.JsonReader;
+
+// Current mission, as reported by the robot:
+// "cleanMissionStatus":{"cycle":"clean","phase":"hmUsrDock","expireM":0,"rechrgM":0,"error":0,"notReady":0,
+// "mssnM":1,"sqft":7,"initiator":"rmtApp","nMssn":39}
+// Instances are immutable.
+public final class MissionStatus {
+
+    public final String cycle;
+    public final String phase;
+    public final String initiator;
+    public final int error;
+    public final int nMssn;
+    public final int sqft;
+    public final int mssnM;
+    public final int expireM;
+    public final int rechrgM;
+
+    private MissionStatus(String cycle, String phase, String initiator, int error, int nMssn, int sqft, int mssnM,
+            int expireM, int rechrgM) {
+        this.cycle = cycle;
+        this.phase = phase;
+        this.initiator = initiator;
+        this.error = error;
+        this.nMssn = nMssn;
+        this.sqft = sqft;
+        this.mssnM = mssnM;
+        this.expireM = expireM;
+        this.rechrgM = rechrgM;
+    }
+
+    public static MissionStatus parse(JsonReader reader) {
+        String cycle = null;
+        String phase = null;
+        String initiator = "";
+        int error = 0;
+        int nMssn = 0;
+        int sqft = 0;
+        int mssnM = 0;
+        int expireM = 0;
+        int rechrgM = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "cycle":
+                    cycle = reader.nextString();
+                    break;
+                case "phase":
+                    phase = reader.nextString();
+                    break;
+                case "error":
+                    error = reader.nextInt();
+                    break;
+                case "nMssn":
+                    nMssn = reader.nextInt();
+                    break;
+                case "sqft":
+                    sqft = reader.nextInt();
+                    break;
+                case "mssnM":
+                    mssnM = reader.nextInt();
+                    break;
+                case "expireM":
+                    expireM = reader.nextInt();
+                    break;
+                case "rechrgM":
+                    rechrgM = reader.nextInt();
+                    break;
+                case "initiator":
+                    initiator = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (cycle == null || phase == null) {
+            throw new JSONException("Incomplete cleanMissionStatus");
+        }
+
+        return new MissionStatus(cycle, phase, initiator, error, nMssn, sqft, mssnM, expireM, rechrgM);
+    }
+
+    // The last command, which would have brought the robot into this state
+    public String getCommand() {
+        if (cycle.equals("none")) {
+            return CMD_STOP;
+        }
+
+        switch (phase) {
+            case "stop":
+            case "stuck": // CHECKME: could also be equivalent to "stop" command
+            case "pause": // Never observed in Roomba 930
+                return CMD_PAUSE;
+            case "hmUsrDock":
+            case "dock": // Never observed in Roomba 930
+                return CMD_DOCK;
+            default:
+                return cycle; // "clean" or "spot"
+        }
+    }
+
+    public boolean isPaused() {
+        return getCommand().equals(CMD_PAUSE);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof MissionStatus)) {
+            return false;
+        }
+
+        MissionStatus other = (MissionStatus) obj;
+
+        return cycle.equals(other.cycle) && phase.equals(other.phase) && initiator.equals(other.initiator)
+                && error == other.error && nMssn == other.nMssn && sqft == other.sqft && mssnM == other.mssnM
+                && expireM == other.expireM && rechrgM == other.rechrgM;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(cycle, phase, initiator, error, nMssn, sqft, mssnM, expireM, rechrgM);
+    }
+
+    @Override
+    public String toString() {
+        JSONObject status = new JSONObject();
+
+        status.put("cycle", cycle);
+        status.put("phase", phase);
+        status.put("initiator", initiator);
+        status.put("error", error);
+        status.put("nMssn", nMssn);
+        status.put("sqft", sqft);
+        status.put("mssnM", mssnM);
+        status.put("expireM", expireM);
+        status.put("rechrgM", rechrgM);
+        return status.toString();
+    }
+}
@@ -0,0 +1,60 @@
+package org.openhab.binding.irobot.roomba;
+
+// Follows cleanMissionStatus reports and detects when a mission is over.
+// Area and time counters grow while the mission runs, so we remember the
+// latest values and record them once the robot goes back to "none" cycle,
+// or if a new mission number shows up without us seeing the end of the
+// previous one.
+public class MissionTracker {
+
+    private boolean active = false;
+    private int nMssn;
+    private int sqft;
+    private int mssnM;
+    private int expireM;
+    private int rechrgM;
+    private int error;
+    private byte initiator;
+    private byte cycle;
+
+    // Returns true if a mission has ended and has been appended to the history
+    public boolean update(String cycle, int nMssn, int sqft, int mssnM, int expireM, int rechrgM, int error,
+            String initiator, MissionHistory history) {
+        boolean running = !cycle.equals("none");
+        boolean ended = false;
+
+        if (active && nMssn == this.nMssn) {
+            // Final report may still carry updated counters
+            this.sqft = Math.max(this.sqft, sqft);
+            this.mssnM = Math.max(this.mssnM, mssnM);
+            if (!running) {
+                this.error = error;
+            }
+        }
+
+        if (active && (!running || nMssn != this.nMssn)) {
+            history.append(System.currentTimeMillis(), this.nMssn, this.sqft, this.mssnM, this.expireM,
+                    this.rechrgM, this.error, this.initiator, this.cycle);
+            active = false;
+            ended = true;
+        }
+
+        if (running) {
+            if (!active) {
+                active = true;
+                this.nMssn = nMssn;
+                this.initiator = MissionHistory.encodeInitiator(initiator);
+                this.cycle = MissionHistory.encodeCycle(cycle);
+                this.sqft = 0;
+            }
+
+            this.sqft = Math.max(this.sqft, sqft);
+            this.mssnM = mssnM;
+            this.expireM = expireM;
+            this.rechrgM = rechrgM;
+            this.error = error;
+        }
+
+        return ended;
+    }
+}
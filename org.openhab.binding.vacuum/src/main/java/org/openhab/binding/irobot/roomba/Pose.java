@@ -0,0 +1,84 @@
+package org.openhab.binding.irobot.roomba;
+
+import org.openhab.binding.irobot.internal.JsonReader;
+
+// Robot position, as reported by robots with "pose" capability:
+// "pose":{"theta":-117,"point":{"x":102,"y":-4}}
+// Coordinates are in centimeters, relative to the dock; theta is in degrees.
+// This comes several times per second while cleaning, so the instance is
+// mutable and is reused, and decoding doesn't allocate anything.
+public class Pose {
+
+    private static final byte[][] POSE_NAMES = JsonReader.names("theta", "point");
+    private static final int NAME_THETA = 0;
+    private static final int NAME_POINT = 1;
+
+    private static final byte[][] POINT_NAMES = JsonReader.names("x", "y");
+    private static final int NAME_X = 0;
+    private static final int NAME_Y = 1;
+
+    private int x;
+    private int y;
+    private int theta;
+
+    public void decode(JsonReader reader) {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName(POSE_NAMES)) {
+                case NAME_THETA:
+                    theta = reader.nextInt();
+                    break;
+                case NAME_POINT:
+                    decodePoint(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+    }
+
+    private void decodePoint(JsonReader reader) {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName(POINT_NAMES)) {
+                case NAME_X:
+                    x = reader.nextInt();
+                    break;
+                case NAME_Y:
+                    y = reader.nextInt();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getTheta() {
+        return theta;
+    }
+
+    // Difference between two headings, normalized to [-180, 180)
+    public static int angleDelta(int from, int to) {
+        int delta = (to - from) % 360;
+
+        if (delta >= 180) {
+            delta -= 360;
+        } else if (delta < -180) {
+            delta += 360;
+        }
+
+        return delta;
+    }
+}
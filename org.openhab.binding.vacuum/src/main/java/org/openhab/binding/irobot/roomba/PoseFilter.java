@@ -0,0 +1,54 @@
+package org.openhab.binding.irobot.roomba;
+
+// Decides which pose updates are worth publishing. Robot reports its position
+// several times per second, but openHAB only needs to see meaningful moves:
+// an update passes if at least minInterval has passed since the last published
+// one, and the robot has since moved by at least minDistance or turned by at
+// least minAngle. With zero deadbands any change passes.
+public class PoseFilter {
+
+    private final long minInterval;
+    private final int minDistance;
+    private final int minAngle;
+
+    private boolean havePose = false;
+    private long lastTime;
+    private int lastX;
+    private int lastY;
+    private int lastTheta;
+
+    public PoseFilter(long minInterval, int minDistance, int minAngle) {
+        this.minInterval = minInterval;
+        this.minDistance = Math.max(minDistance, 1);
+        this.minAngle = Math.max(minAngle, 1);
+    }
+
+    public boolean accept(long now, Pose pose) {
+        if (havePose) {
+            if (now - lastTime < minInterval) {
+                return false;
+            }
+
+            long dx = pose.getX() - lastX;
+            long dy = pose.getY() - lastY;
+            boolean moved = dx * dx + dy * dy >= (long) minDistance * minDistance;
+            boolean turned = Math.abs(Pose.angleDelta(lastTheta, pose.getTheta())) >= minAngle;
+
+            if (!moved && !turned) {
+                return false;
+            }
+        }
+
+        havePose = true;
+        lastTime = now;
+        lastX = pose.getX();
+        lastY = pose.getY();
+        lastTheta = pose.getTheta();
+        return true;
+    }
+
+    // Lets the next update through unconditionally, e. g. after reconnect
+    public void reset() {
+        havePose = false;
+    }
+}
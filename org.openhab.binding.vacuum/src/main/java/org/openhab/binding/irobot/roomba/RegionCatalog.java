@@ -0,0 +1,244 @@
+package org.openhab.binding.irobot.roomba;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openhab.binding.irobot.internal.JsonReader;
+
+// Maps and regions, known to the robot. Robots with mapping capability report
+// their persistent maps along with their versions:
+// "pmaps":[{"7BWzb9_ZRNmbNZe4rkE0fw":"201006T004121"}]
+// Regions are never listed explicitly, but every room clean started from the
+// app shows up in:
+// "lastCommand":{"command":"start","time":1602030144,"initiator":"rmtApp","pmap_id":"7BWzb9_ZRNmbNZe4rkE0fw",
+// "regions":[{"region_id":"22","type":"rid"}],"ordered":1,"user_pmapv_id":"201006T004121"}
+// so we collect them from there. Regions are kept per map and are forgotten
+// only when map version changes, since region IDs are only valid within
+// a specific version.
+public class RegionCatalog {
+
+    private static final String TYPE_ROOM = "rid";
+
+    private static class MapInfo {
+        final String version;
+        // Region ID -> type; insertion order is kept for reporting
+        final Map<String, String> regions = new LinkedHashMap<>();
+
+        MapInfo(String version) {
+            this.version = version;
+        }
+    }
+
+    private final Map<String, MapInfo> maps = new HashMap<>();
+    private @Nullable String currentMap = null;
+    private boolean mapsReported = false;
+
+    // Returns true if the set of known maps has changed
+    public synchronized boolean parseMaps(JsonReader reader) {
+        Map<String, String> reported = new HashMap<>();
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String id = reader.nextName();
+
+                reported.put(id, reader.nextString());
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+
+        boolean changed = maps.keySet().retainAll(reported.keySet());
+        mapsReported = true;
+
+        for (Map.Entry<String, String> entry : reported.entrySet()) {
+            MapInfo info = maps.get(entry.getKey());
+
+            if (info == null || !info.version.equals(entry.getValue())) {
+                // New map or new version of it, old region IDs are no longer valid
+                maps.put(entry.getKey(), new MapInfo(entry.getValue()));
+                changed = true;
+            }
+        }
+
+        if (currentMap != null && !maps.containsKey(currentMap)) {
+            currentMap = null;
+        }
+
+        return changed;
+    }
+
+    // Returns region IDs of the last command, or null if it wasn't a room clean
+    public synchronized @Nullable List<String> parseLastCommand(JsonReader reader) {
+        String mapId = null;
+        String version = null;
+        Map<String, String> regions = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "pmap_id":
+                    mapId = nextStringOrNull(reader);
+                    break;
+                case "user_pmapv_id":
+                    version = nextStringOrNull(reader);
+                    break;
+                case "regions":
+                    regions = parseRegions(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (mapId == null || version == null || regions == null) {
+            return null;
+        }
+
+        MapInfo info = maps.get(mapId);
+
+        if (info == null || !info.version.equals(version)) {
+            if (mapsReported) {
+                // The command refers to a deleted map or an outdated version, don't learn from it
+                return new ArrayList<>(regions.keySet());
+            }
+            // "pmaps" haven't been seen yet, trust this one until they arrive
+            info = new MapInfo(version);
+            maps.put(mapId, info);
+        }
+
+        info.regions.putAll(regions);
+        currentMap = mapId;
+        return new ArrayList<>(regions.keySet());
+    }
+
+    private static Map<String, String> parseRegions(JsonReader reader) {
+        Map<String, String> regions = new LinkedHashMap<>();
+
+        if (reader.peek() == JsonReader.Token.NULL) {
+            reader.nextNull();
+            return regions;
+        }
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String id = null;
+            String type = TYPE_ROOM;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "region_id":
+                        id = reader.nextString();
+                        break;
+                    case "type":
+                        type = reader.nextString();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+
+            if (id != null) {
+                regions.put(id, type);
+            }
+        }
+        reader.endArray();
+
+        return regions;
+    }
+
+    private static @Nullable String nextStringOrNull(JsonReader reader) {
+        if (reader.peek() == JsonReader.Token.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    // Fills in region clean parameters of a "start" command. Spec is a comma-separated
+    // list of region IDs, optionally prefixed by a map ID and a colon, e. g.
+    // "22,5" or "7BWzb9_ZRNmbNZe4rkE0fw:22,5". Without the prefix the map of
+    // the last room clean is used, or the only known map.
+    public synchronized void buildCommand(String spec, JSONObject request) {
+        String mapId;
+        int colon = spec.indexOf(':');
+
+        if (colon >= 0) {
+            mapId = spec.substring(0, colon).trim();
+            spec = spec.substring(colon + 1);
+        } else if (currentMap != null) {
+            mapId = currentMap;
+        } else if (maps.size() == 1) {
+            mapId = maps.keySet().iterator().next();
+        } else {
+            throw new IllegalStateException(maps.isEmpty() ? "No maps are known yet" : "Map ID is required");
+        }
+
+        MapInfo info = maps.get(mapId);
+
+        if (info == null) {
+            throw new IllegalArgumentException("Unknown map " + mapId);
+        }
+
+        JSONArray regions = new JSONArray();
+        Set<String> seen = new HashSet<>();
+
+        for (String id : spec.split(",")) {
+            id = id.trim();
+            if (id.isEmpty() || !seen.add(id)) {
+                continue;
+            }
+
+            JSONObject region = new JSONObject();
+
+            region.put("region_id", id);
+            // Regions, never cleaned from the app, are most likely rooms
+            region.put("type", info.regions.getOrDefault(id, TYPE_ROOM));
+            regions.put(region);
+        }
+
+        if (regions.length() == 0) {
+            throw new IllegalArgumentException("No regions given");
+        }
+
+        request.put("ordered", 1);
+        request.put("pmap_id", mapId);
+        request.put("regions", regions);
+        request.put("user_pmapv_id", info.version);
+    }
+
+    public synchronized void clear() {
+        maps.clear();
+        currentMap = null;
+        mapsReported = false;
+    }
+
+    // For the thing properties, e. g. "7BWzb9_ZRNmbNZe4rkE0fw:22,5"
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        for (Map.Entry<String, MapInfo> entry : maps.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append("; ");
+            }
+            sb.append(entry.getKey()).append(':').append(String.join(",", entry.getValue().regions.keySet()));
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,83 @@
+package org.openhab.binding.irobot.roomba;
+
+import static org.openhab.binding.irobot.IRobotBindingConstants.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+// All the channels of Roomba thing. Allows to keep per-channel data
+// in plain arrays instead of string-keyed maps.
+public enum RoombaChannel {
+    COMMAND(CHANNEL_COMMAND),
+    CYCLE(CHANNEL_CYCLE),
+    PHASE(CHANNEL_PHASE),
+    BIN(CHANNEL_BIN),
+    BATTERY(CHANNEL_BATTERY),
+    ERROR(CHANNEL_ERROR),
+    RSSI(CHANNEL_RSSI),
+    SNR(CHANNEL_SNR),
+    SCHED_SUN(CHANNEL_SCHED_SWITCH[0]),
+    SCHED_MON(CHANNEL_SCHED_SWITCH[1]),
+    SCHED_TUE(CHANNEL_SCHED_SWITCH[2]),
+    SCHED_WED(CHANNEL_SCHED_SWITCH[3]),
+    SCHED_THU(CHANNEL_SCHED_SWITCH[4]),
+    SCHED_FRI(CHANNEL_SCHED_SWITCH[5]),
+    SCHED_SAT(CHANNEL_SCHED_SWITCH[6]),
+    SCHED_SUN_TIME(CHANNEL_SCHED_TIME[0]),
+    SCHED_MON_TIME(CHANNEL_SCHED_TIME[1]),
+    SCHED_TUE_TIME(CHANNEL_SCHED_TIME[2]),
+    SCHED_WED_TIME(CHANNEL_SCHED_TIME[3]),
+    SCHED_THU_TIME(CHANNEL_SCHED_TIME[4]),
+    SCHED_FRI_TIME(CHANNEL_SCHED_TIME[5]),
+    SCHED_SAT_TIME(CHANNEL_SCHED_TIME[6]),
+    SCHEDULE(CHANNEL_SCHEDULE),
+    EDGE_CLEAN(CHANNEL_EDGE_CLEAN),
+    ALWAYS_FINISH(CHANNEL_ALWAYS_FINISH),
+    POWER_BOOST(CHANNEL_POWER_BOOST),
+    CLEAN_PASSES(CHANNEL_CLEAN_PASSES),
+    CLEAN_REGIONS(CHANNEL_CLEAN_REGIONS),
+    LAST_MISSION_AREA(CHANNEL_LAST_MISSION_AREA),
+    LAST_MISSION_DURATION(CHANNEL_LAST_MISSION_DURATION),
+    AVG_MISSION_AREA(CHANNEL_AVG_MISSION_AREA),
+    AVG_MISSION_DURATION(CHANNEL_AVG_MISSION_DURATION),
+    POSE_X(CHANNEL_POSE_X),
+    POSE_Y(CHANNEL_POSE_Y),
+    POSE_THETA(CHANNEL_POSE_THETA),
+    STAT_MESSAGE_RATE(CHANNEL_STAT_MESSAGE_RATE),
+    STAT_PARSE_TIME(CHANNEL_STAT_PARSE_TIME),
+    STAT_CONNECT_TIME(CHANNEL_STAT_CONNECT_TIME),
+    STAT_RECONNECTS(CHANNEL_STAT_RECONNECTS),
+    STAT_PUBLISH_FAILURES(CHANNEL_STAT_PUBLISH_FAILURES),
+    STAT_UPDATES_SUPPRESSED(CHANNEL_STAT_UPDATES_SUPPRESSED),
+    STAT_STALL_DETECT_TIME(CHANNEL_STAT_STALL_DETECT_TIME);
+
+    // In the same order as CHANNEL_SCHED_SWITCH, i. e. iRobot's weekday numbering
+    public static final RoombaChannel[] SCHED_SWITCH = { SCHED_SUN, SCHED_MON, SCHED_TUE, SCHED_WED, SCHED_THU,
+            SCHED_FRI, SCHED_SAT };
+    public static final RoombaChannel[] SCHED_TIME = { SCHED_SUN_TIME, SCHED_MON_TIME, SCHED_TUE_TIME,
+            SCHED_WED_TIME, SCHED_THU_TIME, SCHED_FRI_TIME, SCHED_SAT_TIME };
+
+    private static final Map<String, RoombaChannel> BY_ID = new HashMap<>();
+
+    static {
+        for (RoombaChannel channel : values()) {
+            BY_ID.put(channel.id, channel);
+        }
+    }
+
+    private final String id;
+
+    private RoombaChannel(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public static @Nullable RoombaChannel fromId(String id) {
+        return BY_ID.get(id);
+    }
+}
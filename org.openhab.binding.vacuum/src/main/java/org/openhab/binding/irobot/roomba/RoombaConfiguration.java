@@ -7,6 +7,43 @@ public class RoombaConfiguration {
     public String ipaddress;
     public String password;
 
+    // Reconnection backoff, all in seconds
+    public int reconnectInitialDelay = 5;
+    public int reconnectMaxDelay = 300;
+    public int reconnectStableTime = 60;
+
+    // Settings changes, arriving within this time (in milliseconds), are sent
+    // together. With flush on idle, the time is counted from the last change.
+    public int commandWindow = 100;
+    public boolean commandFlushOnIdle = false;
+
+    // Commands, issued while offline, are discarded after this time (in seconds)
+    public int commandTtl = 60;
+
+    // Pose updates are published not more often than poseInterval (in milliseconds),
+    // and only if the robot has moved by poseDistance (cm) or turned by poseAngle (degrees)
+    public int poseInterval = 1000;
+    public int poseDistance = 10;
+    public int poseAngle = 10;
+    // Record full-rate trajectory of every mission
+    public boolean poseLog = false;
+
+    // Signal strength and battery level are published when they change by the
+    // deadband (dB and % respectively), but not more often than telemetryMinInterval.
+    // Smaller changes are published after telemetryMaxInterval. Both intervals are in seconds.
+    public int telemetryMinInterval = 10;
+    public int telemetryMaxInterval = 60;
+    public int signalDeadband = 3;
+    public int batteryDeadband = 1;
+
+    // MQTT keep alive (in seconds). The connection is also dropped, if the robot
+    // sends nothing for inactivityTimeout (in seconds), 0 to disable.
+    public int keepAlive = 15;
+    public int inactivityTimeout = 30;
+
+    // Diagnostic channels are updated with this period (in seconds), 0 to disable
+    public int statsInterval = 60;
+
     public boolean havePassword() {
         return !(password == null || password.isEmpty());
     }
@@ -0,0 +1,222 @@
+package org.openhab.binding.irobot.roomba;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONException;
+import org.openhab.binding.irobot.internal.JsonReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// A hand-off stage between HiveMQ callback and the handler. The callback runs on
+// Netty I/O thread, so we must never do anything slow there. Messages are queued
+// and processed on the given executor, one at a time.
+// Roomba repeats some reports (e. g. "signal") quite often, so if processing
+// falls behind, there's no point in handling every one of them. The queue is
+// keyed by topic and the set of reported keys; a newer message replaces an older
+// queued one with the same key and takes its place at the end of the queue.
+// Messages with a "pose" are never replaced, the trajectory log needs every one
+// of them. If the queue is still full, the oldest message is dropped.
+public class RoombaMessagePipeline {
+
+    @FunctionalInterface
+    public interface Consumer {
+        void processMessage(String topic, byte[] payload);
+    }
+
+    // How many messages to process in one go before giving the thread back
+    private static final int DRAIN_BATCH = 32;
+    // Reported key, whose every value is recorded
+    private static final String KEY_POSE = "pose";
+
+    private final Logger logger = LoggerFactory.getLogger(RoombaMessagePipeline.class);
+    private final Executor executor;
+    private final Consumer consumer;
+    private final int capacity;
+    private final LinkedHashMap<String, Message> pending = new LinkedHashMap<>();
+    private boolean drainScheduled = false;
+    private long uniqueKey = 0;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong conflated = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private static class Message {
+        final String topic;
+        final byte[] payload;
+        final Consumer consumer;
+
+        Message(String topic, byte[] payload, Consumer consumer) {
+            this.topic = topic;
+            this.payload = payload;
+            this.consumer = consumer;
+        }
+    }
+
+    public RoombaMessagePipeline(Executor executor, Consumer consumer, int capacity) {
+        this.executor = executor;
+        this.consumer = consumer;
+        this.capacity = capacity;
+    }
+
+    // Called from MQTT I/O thread. Never blocks.
+    public void offer(String topic, byte[] payload) {
+        offer(topic, payload, consumer);
+    }
+
+    // The same, but processed by a different consumer
+    public void offer(String topic, byte[] payload, Consumer consumer) {
+        String key = conflationKey(topic, payload);
+        Message message = new Message(topic, payload, consumer);
+        boolean schedule = false;
+
+        received.incrementAndGet();
+        synchronized (pending) {
+            if (key == null) {
+                key = "#" + uniqueKey++;
+            }
+
+            // The replacement goes to the tail, so that it's processed after messages,
+            // which have arrived in between; otherwise their older values would win
+            boolean replaced = pending.remove(key) != null;
+
+            pending.put(key, message);
+            if (replaced) {
+                conflated.incrementAndGet();
+            } else if (pending.size() > capacity) {
+                Iterator<Message> oldest = pending.values().iterator();
+
+                oldest.next();
+                oldest.remove();
+                dropped.incrementAndGet();
+                logger.trace("Message queue is full, dropping oldest message");
+            }
+
+            if (!drainScheduled) {
+                drainScheduled = true;
+                schedule = true;
+            }
+        }
+
+        if (schedule) {
+            submitDrain();
+        }
+    }
+
+    // Drops queued messages. A drain, which is still scheduled, is forgotten too,
+    // so this also recovers from an executor, which has silently dropped it.
+    public void clear() {
+        synchronized (pending) {
+            pending.clear();
+            drainScheduled = false;
+        }
+    }
+
+    public int getQueueDepth() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    public long getConflatedCount() {
+        return conflated.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private void submitDrain() {
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // We are being shut down
+            synchronized (pending) {
+                pending.clear();
+                drainScheduled = false;
+            }
+        }
+    }
+
+    private void drain() {
+        for (int i = 0; i < DRAIN_BATCH; i++) {
+            Message message;
+
+            synchronized (pending) {
+                Iterator<Message> first = pending.values().iterator();
+
+                if (!first.hasNext()) {
+                    drainScheduled = false;
+                    return;
+                }
+
+                message = first.next();
+                first.remove();
+            }
+
+            try {
+                message.consumer.processMessage(message.topic, message.payload);
+            } catch (RuntimeException e) {
+                logger.warn("Failed to process message from {}: {}", message.topic, e.toString());
+            }
+        }
+
+        // Still something left; let others use the thread, then continue
+        submitDrain();
+    }
+
+    // Builds a key from topic and names of all keys under "state.reported", e. g.
+    // "wifistat:signal". Values are skipped without being parsed. Returns null
+    // if the message should never be conflated.
+    private static String conflationKey(String topic, byte[] payload) {
+        StringBuilder key = new StringBuilder(topic).append(':');
+        boolean haveReported = false;
+
+        try {
+            JsonReader reader = new JsonReader(payload);
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("state")) {
+                    reader.skipValue();
+                    continue;
+                }
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (!reader.nextName().equals("reported")) {
+                        reader.skipValue();
+                        continue;
+                    }
+
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String name = reader.nextName();
+
+                        if (name.equals(KEY_POSE)) {
+                            return null;
+                        }
+                        key.append(name).append(',');
+                        reader.skipValue();
+                        haveReported = true;
+                    }
+                    reader.endObject();
+                }
+                reader.endObject();
+            }
+            reader.endObject();
+        } catch (JSONException e) {
+            // Let the handler see it and complain
+            return null;
+        }
+
+        return haveReported ? key.toString() : null;
+    }
+}
@@ -0,0 +1,89 @@
+package org.openhab.binding.irobot.roomba;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openhab.binding.irobot.internal.LatencyHistogram;
+
+// Per-robot counters for diagnostics. Everything is recorded without locks:
+// counters are striped (LongAdder) and histograms are built from them, so
+// recording costs next to nothing and is always on. Message rates are
+// computed when sampled, from the difference since the previous sample.
+public class RoombaMetrics {
+
+    private final Map<String, LongAdder> messages = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastSample = new TreeMap<>();
+    private long lastSampleTime = System.nanoTime();
+    private Map<String, Double> lastRates = new TreeMap<>();
+
+    // processMessage(), i. e. JSON decoding and channel updates
+    public final LatencyHistogram parseTime = new LatencyHistogram();
+    // Whole connect(), from IDENT until subscription is confirmed
+    public final LatencyHistogram connectTime = new LatencyHistogram();
+    // MQTT connection setup: TCP connect, TLS handshake and CONNACK
+    public final LatencyHistogram mqttConnectTime = new LatencyHistogram();
+    // TCP connect and TLS handshake for password requests
+    public final LatencyHistogram handshakeTime = new LatencyHistogram();
+    // From the last message until the inactivity watchdog gave up on the connection
+    public final LatencyHistogram stallDetectTime = new LatencyHistogram();
+
+    public final LongAdder published = new LongAdder();
+    public final LongAdder publishFailures = new LongAdder();
+    public final LongAdder stateUpdates = new LongAdder();
+    // Skipped because the value didn't change
+    public final LongAdder stateSuppressed = new LongAdder();
+    // Held back by a telemetry throttle
+    public final LongAdder stateThrottled = new LongAdder();
+
+    // Called on MQTT I/O thread for every incoming message
+    public void messageReceived(String topic) {
+        LongAdder counter = messages.get(topic);
+
+        if (counter == null) {
+            counter = messages.computeIfAbsent(topic, t -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    public long getMessageCount() {
+        long total = 0;
+
+        for (LongAdder counter : messages.values()) {
+            total += counter.sum();
+        }
+
+        return total;
+    }
+
+    // Computes messages per second for every topic since the previous call
+    public synchronized Map<String, Double> sampleMessageRates() {
+        Map<String, Double> rates = new TreeMap<>();
+        long now = System.nanoTime();
+        double seconds = Math.max(now - lastSampleTime, 1) / 1e9;
+
+        for (Map.Entry<String, LongAdder> entry : messages.entrySet()) {
+            long count = entry.getValue().sum();
+            Long previous = lastSample.put(entry.getKey(), count);
+
+            rates.put(entry.getKey(), (count - (previous != null ? previous : 0)) / seconds);
+        }
+
+        lastSampleTime = now;
+        lastRates = rates;
+        return rates;
+    }
+
+    // Result of the last sampleMessageRates()
+    public synchronized Map<String, Double> getMessageRates() {
+        return lastRates;
+    }
+
+    public Map<String, Long> getMessageCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+
+        messages.forEach((topic, counter) -> counts.put(topic, counter.sum()));
+        return counts;
+    }
+}
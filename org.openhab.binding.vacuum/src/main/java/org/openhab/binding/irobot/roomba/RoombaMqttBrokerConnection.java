@@ -7,6 +7,12 @@
 package org.openhab.binding.irobot.roomba;
 
 import java.security.KeyStore;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.net.ssl.ManagerFactoryParameters;
 import javax.net.ssl.TrustManager;
@@ -14,21 +20,33 @@ import javax.net.ssl.TrustManager;
 import org.eclipse.jdt.annotation.Nullable;
 import org.jetbrains.annotations.NotNull;
 import org.openhab.binding.irobot.handler.RoombaHandler;
+import org.openhab.binding.irobot.internal.InactivityWatchdog;
 import org.openhab.binding.irobot.internal.RawMQTT;
 
 import com.hivemq.client.mqtt.MqttClient;
+import com.hivemq.client.mqtt.MqttClientSslConfig;
+import com.hivemq.client.mqtt.MqttGlobalPublishFilter;
 import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.datatypes.MqttTopic;
 import com.hivemq.client.mqtt.lifecycle.MqttClientDisconnectedContext;
 import com.hivemq.client.mqtt.lifecycle.MqttClientDisconnectedListener;
 import com.hivemq.client.mqtt.mqtt3.Mqtt3AsyncClient;
+import com.hivemq.client.mqtt.mqtt3.message.subscribe.Mqtt3Subscribe;
+import com.hivemq.client.mqtt.mqtt3.message.subscribe.Mqtt3SubscribeBuilder;
+import com.hivemq.client.mqtt.mqtt3.message.subscribe.Mqtt3Subscription;
+import com.hivemq.client.mqtt.mqtt3.message.subscribe.suback.Mqtt3SubAck;
 
 import io.netty.handler.ssl.util.SimpleTrustManagerFactory;
+import io.netty.util.Timer;
 
 public class RoombaMqttBrokerConnection implements MqttClientDisconnectedListener {
 
     private Mqtt3AsyncClient client;
     private RoombaHandler handler;
-    private Boolean isConnected = false;
+    private TopicRouter router;
+    private final AtomicBoolean isConnected = new AtomicBoolean(false);
+    private final int keepAlive;
+    private final @Nullable InactivityWatchdog watchdog;
 
     public static class RoombaTrustManagerFactory extends SimpleTrustManagerFactory {
         @Override
@@ -46,45 +64,159 @@ public class RoombaMqttBrokerConnection implements MqttClientDisconnectedListene
     };
 
     private static RoombaTrustManagerFactory roombaTMFactory = new RoombaTrustManagerFactory();
-
-    public RoombaMqttBrokerConnection(String host, String clientId, RoombaHandler owner) {
+    // The same for all robots. Unfortunately HiveMQ builds its own Netty SslContext
+    // for every connection, so there's no session cache we could share here; see
+    // TlsContext.
+    private static MqttClientSslConfig sslConfig = MqttClientSslConfig.builder().trustManagerFactory(roombaTMFactory)
+            .build();
+
+    private long connectStart;
+    private volatile long connectTime = -1;
+
+    // Keep alive is in seconds, inactivity timeout in milliseconds. The watchdog is
+    // off without a timer or with zero timeout.
+    public RoombaMqttBrokerConnection(String host, String clientId, TopicRouter router, RoombaHandler owner,
+            int keepAlive, @Nullable Timer timer, long inactivityTimeout) {
         handler = owner;
+        this.router = router;
+        this.keepAlive = keepAlive;
+        watchdog = timer != null && inactivityTimeout > 0
+                ? new InactivityWatchdog(timer, inactivityTimeout, this::onInactive)
+                : null;
         client = MqttClient.builder().useMqttVersion3().serverHost(host).serverPort(RawMQTT.ROOMBA_MQTT_PORT)
-                .identifier(clientId).addDisconnectedListener(this).sslWithDefaultConfig().sslConfig()
-                .trustManagerFactory(roombaTMFactory).applySslConfig().buildAsync();
+                .identifier(clientId).addDisconnectedListener(this).sslConfig(sslConfig).buildAsync();
+        // All incoming messages, subscribed or not, go through the router. Runs on Netty I/O thread;
+        // unwanted topics are dropped right here, the rest is only queued by the handler.
+        client.publishes(MqttGlobalPublishFilter.ALL, publish -> {
+            InactivityWatchdog w = watchdog;
+
+            // Anything at all proves that the robot is alive
+            if (w != null) {
+                w.touch();
+            }
+
+            MqttTopic topic = publish.getTopic();
+            TopicRouter.Route route = router.route(topic.toByteBuffer());
+
+            if (route != null) {
+                handler.onMessage(topic.toString(), publish.getPayloadAsBytes(), route.getDecoder());
+            }
+        });
     }
 
     public void start(String username, String password) {
-        isConnected = true;
-        client.connectWith().simpleAuth().username(username).password(password.getBytes()).applySimpleAuth().send()
+        isConnected.set(true);
+        connectStart = System.nanoTime();
+        client.connectWith().keepAlive(keepAlive).simpleAuth().username(username).password(password.getBytes())
+                .applySimpleAuth().send()
                 .whenComplete((connAck, connectError) -> {
                     // We are not handling connection errors here because
                     // onDisconnected gets called anyway
                     if (connectError == null) {
-                        client.subscribeWith().topicFilter("#").callback(publish -> {
-                            handler.processMessage(publish.getTopic().toString(), publish.getPayloadAsBytes());
-                        }).send().whenComplete((subAck, subError) -> {
-                            handler.onConnected();
+                        long elapsed = System.nanoTime() - connectStart;
+
+                        connectTime = elapsed / 1000000;
+                        handler.getMetrics().mqttConnectTime.record(elapsed);
+                        startWatchdog();
+                        subscribe(router.getFilters()).whenComplete((subAck, subError) -> {
+                            if (subError == null && subAck.getReturnCodes().stream().anyMatch(c -> c.isError())) {
+                                // Should the robot refuse specific topics, take everything; the router
+                                // still drops what we don't need
+                                subscribe(Collections.singletonList("#")).whenComplete((ack, error) -> {
+                                    onSubscribed();
+                                });
+                            } else {
+                                onSubscribed();
+                            }
                         });
                     }
                 });
     }
 
+    // Supervised from CONNACK on: a robot may as well swallow SUBSCRIBE and never
+    // answer, the same way it does with UNSUBSCRIBE
+    private void startWatchdog() {
+        InactivityWatchdog w = watchdog;
+
+        if (w != null && isConnected.get()) {
+            w.start();
+        }
+    }
+
+    private void onSubscribed() {
+        InactivityWatchdog w = watchdog;
+
+        // SUBACK is activity too, but it doesn't go through publishes()
+        if (w != null) {
+            w.touch();
+        }
+        handler.onConnected();
+    }
+
+    private CompletableFuture<Mqtt3SubAck> subscribe(List<String> filters) {
+        Mqtt3SubscribeBuilder.Start builder = Mqtt3Subscribe.builder();
+        Mqtt3SubscribeBuilder.Complete subscribe = null;
+
+        for (String filter : filters) {
+            Mqtt3Subscription subscription = Mqtt3Subscription.builder().topicFilter(filter)
+                    .qos(MqttQos.AT_MOST_ONCE).build();
+
+            subscribe = subscribe == null ? builder.addSubscription(subscription)
+                    : subscribe.addSubscription(subscription);
+        }
+
+        return client.subscribe(subscribe.build());
+    }
+
+    // Time from start() until CONNACK, including TCP connect and TLS handshake,
+    // in milliseconds. -1 if not connected yet.
+    public long getConnectTime() {
+        return connectTime;
+    }
+
     public void stop() {
-        isConnected = false;
+        isConnected.set(false);
+        stopWatchdog();
         client.disconnect();
     }
 
+    private void stopWatchdog() {
+        InactivityWatchdog w = watchdog;
+
+        if (w != null) {
+            w.stop();
+        }
+    }
+
+    // The link is dead, but TCP doesn't know it yet. HiveMQ wouldn't notice before
+    // the keep alive expires, so drop the connection and go reconnecting now.
+    private void onInactive(long silence) {
+        if (isConnected.compareAndSet(true, false)) {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(silence);
+
+            handler.getMetrics().stallDetectTime.record(silence);
+            client.disconnect();
+            handler.onDisconnected(new TimeoutException("No messages for " + elapsed + " ms"));
+        }
+    }
+
     public void publish(String topic, byte[] data) {
         // Only this qos value is accepted by Roomba, others just cause it
         // to reject the command and drop the connection.
-        client.publishWith().topic(topic).payload(data).qos(MqttQos.AT_MOST_ONCE).send();
+        RoombaMetrics metrics = handler.getMetrics();
+
+        metrics.published.increment();
+        client.publishWith().topic(topic).payload(data).qos(MqttQos.AT_MOST_ONCE).send().whenComplete((p, e) -> {
+            if (e != null) {
+                metrics.publishFailures.increment();
+            }
+        });
     }
 
     @Override
     public void onDisconnected(@NotNull MqttClientDisconnectedContext context) {
-        if (isConnected) {
-            isConnected = false;
+        if (isConnected.compareAndSet(true, false)) {
+            stopWatchdog();
             handler.onDisconnected(context.getCause());
         }
     }
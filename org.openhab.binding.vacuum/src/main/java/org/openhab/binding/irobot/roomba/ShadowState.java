@@ -0,0 +1,128 @@
+package org.openhab.binding.irobot.roomba;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+// Merged "state.reported" document of a robot. The robot only ever sends
+// fragments of it, each top-level key with its complete value, so fragments
+// are merged key by key. Keys the handler knows are kept as typed values
+// (Boolean, Integer, String, CleanSchedule, MissionStatus), everything else
+// as raw JSON text.
+// Every merge, which changes anything, produces a new immutable snapshot with
+// a higher version. Snapshots are published through a volatile reference, so
+// readers (commands, diagnostics) never lock and always see a consistent view.
+// Writers are serialized.
+public class ShadowState {
+
+    public static final String KEY_MISSION_STATUS = "cleanMissionStatus";
+    public static final String KEY_SCHEDULE = "cleanSchedule";
+    public static final String KEY_CARPET_BOOST = "carpetBoost";
+    public static final String KEY_VAC_HIGH = "vacHigh";
+    public static final String KEY_NO_AUTO_PASSES = "noAutoPasses";
+    public static final String KEY_TWO_PASS = "twoPass";
+
+    // A value, which hasn't been parsed
+    public static final class Raw {
+        private final String json;
+
+        public Raw(String json) {
+            this.json = json;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Raw && json.equals(((Raw) obj).json);
+        }
+
+        @Override
+        public int hashCode() {
+            return json.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return json;
+        }
+    }
+
+    public static final class Snapshot {
+        private final long version;
+        private final Map<String, Object> values;
+
+        private Snapshot(long version, Map<String, Object> values) {
+            this.version = version;
+            this.values = values;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public @Nullable Object get(String key) {
+            return values.get(key);
+        }
+
+        // Null if there's no such key, or it's not of the given type
+        public <T> @Nullable T get(String key, Class<T> type) {
+            Object value = values.get(key);
+
+            return type.isInstance(value) ? type.cast(value) : null;
+        }
+
+        public Set<String> getKeys() {
+            return values.keySet();
+        }
+
+        public int size() {
+            return values.size();
+        }
+
+        // Sorted by key, for diagnostics
+        public Map<String, Object> toMap() {
+            return new TreeMap<>(values);
+        }
+    }
+
+    private volatile Snapshot current = new Snapshot(0, Collections.emptyMap());
+
+    public Snapshot get() {
+        return current;
+    }
+
+    // Merges the fragment and returns the resulting snapshot. Keys with the same
+    // values as before are ignored; if nothing changes, the current snapshot is
+    // returned and the version stays the same.
+    public synchronized Snapshot merge(Map<String, Object> fragment) {
+        Snapshot old = current;
+        Map<String, Object> values = null;
+
+        for (Map.Entry<String, Object> entry : fragment.entrySet()) {
+            if (!entry.getValue().equals(old.values.get(entry.getKey()))) {
+                if (values == null) {
+                    values = new HashMap<>(old.values);
+                }
+                values.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        if (values != null) {
+            current = new Snapshot(old.version + 1, Collections.unmodifiableMap(values));
+        }
+
+        return current;
+    }
+
+    public synchronized Snapshot merge(String key, Object value) {
+        return merge(Collections.singletonMap(key, value));
+    }
+
+    // Forgets everything, e. g. when starting over with a new connection
+    public synchronized void clear() {
+        current = new Snapshot(current.version + 1, Collections.emptyMap());
+    }
+}
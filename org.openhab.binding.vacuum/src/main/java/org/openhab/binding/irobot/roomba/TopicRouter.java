@@ -0,0 +1,162 @@
+package org.openhab.binding.irobot.roomba;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+// Maps MQTT topics to decoders. A route is either an exact topic or a filter
+// with MQTT wildcards ("+" for one level, "#" for the rest). Matching works
+// on raw UTF-8 bytes of the topic, as HiveMQ holds them, so messages nobody
+// is interested in are dropped without creating a String or copying the
+// payload. Routes are added before the connection is started and never
+// change afterwards, so lookups need no locking.
+// Every route counts its messages; rejected messages are counted per topic,
+// so that we can see what else the robot sends.
+public class TopicRouter {
+
+    public static class Route {
+        private final String filter;
+        private final byte[] filterBytes;
+        private final RoombaMessagePipeline.Consumer decoder;
+        private final LongAdder count = new LongAdder();
+
+        private Route(String filter, RoombaMessagePipeline.Consumer decoder) {
+            this.filter = filter;
+            this.filterBytes = filter.getBytes(StandardCharsets.UTF_8);
+            this.decoder = decoder;
+        }
+
+        public String getFilter() {
+            return filter;
+        }
+
+        public RoombaMessagePipeline.Consumer getDecoder() {
+            return decoder;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+    }
+
+    private final Map<ByteBuffer, Route> exact = new HashMap<>();
+    private final List<Route> wildcards = new ArrayList<>();
+    private final Map<ByteBuffer, LongAdder> rejected = new ConcurrentHashMap<>();
+
+    public TopicRouter addRoute(String filter, RoombaMessagePipeline.Consumer decoder) {
+        Route route = new Route(filter, decoder);
+
+        if (filter.indexOf('+') >= 0 || filter.indexOf('#') >= 0) {
+            wildcards.add(route);
+        } else {
+            exact.put(ByteBuffer.wrap(route.filterBytes), route);
+        }
+
+        return this;
+    }
+
+    // What to subscribe to
+    public List<String> getFilters() {
+        List<String> filters = new ArrayList<>();
+
+        for (Route route : exact.values()) {
+            filters.add(route.filter);
+        }
+        for (Route route : wildcards) {
+            filters.add(route.filter);
+        }
+
+        return filters;
+    }
+
+    // Called on MQTT I/O thread with the topic's UTF-8 bytes between position and limit.
+    // Returns null if nobody is interested.
+    public @Nullable Route route(ByteBuffer topic) {
+        Route route = exact.get(topic);
+
+        if (route == null) {
+            for (Route r : wildcards) {
+                if (matches(r.filterBytes, topic)) {
+                    route = r;
+                    break;
+                }
+            }
+        }
+
+        if (route != null) {
+            route.count.increment();
+        } else {
+            reject(topic);
+        }
+
+        return route;
+    }
+
+    private void reject(ByteBuffer topic) {
+        LongAdder counter = rejected.get(topic);
+
+        if (counter == null) {
+            // First time we see this topic; the buffer belongs to HiveMQ, so keep a copy
+            ByteBuffer key = ByteBuffer.allocate(topic.remaining());
+
+            key.put(topic.duplicate());
+            key.flip();
+            counter = rejected.computeIfAbsent(key, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    // Message counts of all routes and rejected topics, the latter marked with "!"
+    public Map<String, Long> getCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+
+        for (Route route : exact.values()) {
+            counts.put(route.filter, route.getCount());
+        }
+        for (Route route : wildcards) {
+            counts.put(route.filter, route.getCount());
+        }
+        rejected.forEach((topic, counter) -> {
+            counts.put("!" + StandardCharsets.UTF_8.decode(topic.duplicate()), counter.sum());
+        });
+
+        return counts;
+    }
+
+    static boolean matches(byte[] filter, ByteBuffer topic) {
+        int t = topic.position();
+        int end = topic.limit();
+
+        // Per MQTT spec, wildcards at the first level don't match "$SYS"-like topics
+        if (filter.length > 0 && (filter[0] == '+' || filter[0] == '#') && t < end && topic.get(t) == '$') {
+            return false;
+        }
+
+        for (int f = 0; f < filter.length; f++) {
+            byte c = filter[f];
+
+            if (c == '#') {
+                return true;
+            } else if (c == '+') {
+                while (t < end && topic.get(t) != '/') {
+                    t++;
+                }
+            } else if (t < end && topic.get(t) == c) {
+                t++;
+            } else {
+                // "a/#" also matches "a"
+                return t == end && c == '/' && f == filter.length - 2 && filter[f + 1] == '#';
+            }
+        }
+
+        return t == end;
+    }
+}
@@ -0,0 +1,185 @@
+package org.openhab.binding.irobot.roomba;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Append-only log of robot positions during a single mission. Every pose
+// is stored relative to the previous one, as zigzag-encoded varints, so
+// a typical record takes 4 to 6 bytes. Records are collected in a buffer
+// and written out in chunks, appending doesn't allocate anything.
+// If the binding is killed, only the tail of the buffer is lost; export()
+// ignores a truncated last record.
+//
+// File layout:
+// Header: magic, version (ints), mission start time (long), nMssn (int), all little endian
+// Record: varints of time delta (ms), x delta, y delta, theta delta
+public class TrajectoryLog implements Closeable {
+
+    private static final int MAGIC = 0x4a415254; // "TRAJ"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+    private static final int BUFFER_SIZE = 4096;
+    private static final int MAX_RECORD_SIZE = 4 * 10; // Four varints of up to 10 bytes each
+    private static final String FILE_PATTERN = "mission-*.trajectory";
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final int nMssn;
+    private long lastTime;
+    private int lastX = 0;
+    private int lastY = 0;
+    private int lastTheta = 0;
+
+    private TrajectoryLog(FileChannel channel, int nMssn, long startTime) {
+        this.channel = channel;
+        this.nMssn = nMssn;
+        this.lastTime = startTime;
+    }
+
+    public static TrajectoryLog create(Path file, int nMssn, long startTime) throws IOException {
+        Files.createDirectories(file.getParent());
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        TrajectoryLog log = new TrajectoryLog(channel, nMssn, startTime);
+
+        log.buffer.putInt(MAGIC);
+        log.buffer.putInt(VERSION);
+        log.buffer.putLong(startTime);
+        log.buffer.putInt(nMssn);
+        return log;
+    }
+
+    public int getMission() {
+        return nMssn;
+    }
+
+    public synchronized void append(long time, Pose pose) throws IOException {
+        if (buffer.remaining() < MAX_RECORD_SIZE) {
+            flush();
+        }
+
+        putVarint(time - lastTime);
+        putVarint((long) pose.getX() - lastX);
+        putVarint((long) pose.getY() - lastY);
+        putVarint(Pose.angleDelta(lastTheta, pose.getTheta()));
+
+        lastTime = time;
+        lastX = pose.getX();
+        lastY = pose.getY();
+        lastTheta = pose.getTheta();
+    }
+
+    public synchronized void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void putVarint(long value) {
+        long v = (value << 1) ^ (value >> 63); // Zigzag, so that small negatives are short too
+
+        while ((v & ~0x7FL) != 0) {
+            buffer.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte) v);
+    }
+
+    // Trajectory files in the given directory, oldest first
+    public static List<Path> list(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+
+        if (!Files.isDirectory(dir)) {
+            return files;
+        }
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, FILE_PATTERN)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+
+        Collections.sort(files, (a, b) -> Long.compare(a.toFile().lastModified(), b.toFile().lastModified()));
+        return files;
+    }
+
+    // Deletes the oldest files, so that no more than the given number is left
+    public static void prune(Path dir, int keep) throws IOException {
+        List<Path> files = list(dir);
+
+        for (int i = 0; i < files.size() - keep; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    // Writes the trajectory as CSV: time (ms since epoch), x, y, theta
+    public static void export(Path file, Appendable out) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+
+        if (data.remaining() < HEADER_SIZE || data.getInt() != MAGIC || data.getInt() != VERSION) {
+            throw new IOException("Not a trajectory file: " + file);
+        }
+
+        long time = data.getLong();
+        long x = 0;
+        long y = 0;
+        long theta = 0;
+
+        data.getInt(); // nMssn
+        out.append("time,x,y,theta\n");
+
+        try {
+            while (data.hasRemaining()) {
+                long dt = getVarint(data);
+                long dx = getVarint(data);
+                long dy = getVarint(data);
+                long dtheta = getVarint(data);
+
+                time += dt;
+                x += dx;
+                y += dy;
+                theta = Math.floorMod(theta + dtheta + 180, 360) - 180;
+                out.append(Long.toString(time)).append(',').append(Long.toString(x)).append(',')
+                        .append(Long.toString(y)).append(',').append(Long.toString(theta)).append('\n');
+            }
+        } catch (BufferUnderflowException e) {
+            // Truncated last record, the file wasn't closed properly
+        }
+    }
+
+    private static long getVarint(ByteBuffer data) {
+        long v = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            b = data.get();
+            v |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
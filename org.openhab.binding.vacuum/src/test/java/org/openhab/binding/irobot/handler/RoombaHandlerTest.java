@@ -0,0 +1,146 @@
+package org.openhab.binding.irobot.handler;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.openhab.binding.irobot.IRobotBindingConstants.THING_TYPE_ROOMBA;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.smarthome.config.core.ConfigConstants;
+import org.eclipse.smarthome.config.core.Configuration;
+import org.eclipse.smarthome.core.thing.Thing;
+import org.eclipse.smarthome.core.thing.ThingStatusDetail;
+import org.eclipse.smarthome.core.thing.ThingStatusInfo;
+import org.eclipse.smarthome.core.thing.ThingUID;
+import org.eclipse.smarthome.core.thing.binding.ThingHandlerCallback;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentMatcher;
+import org.openhab.binding.irobot.internal.IdentCache;
+import org.openhab.binding.irobot.internal.IdentProtocol.IdentData;
+import org.openhab.binding.irobot.internal.KeyedSerialExecutor;
+import org.openhab.binding.irobot.roomba.RoombaConfiguration;
+
+public class RoombaHandlerTest {
+
+    private static final String ADDRESS = "127.0.0.1";
+    private static final long TIMEOUT = 5000;
+
+    @Rule
+    public TemporaryFolder userData = new TemporaryFolder();
+
+    private final KeyedSerialExecutor executor = new KeyedSerialExecutor("test", 2);
+    private final IdentCache identCache = new IdentCache();
+    private Thing thing;
+    private ThingHandlerCallback callback;
+
+    @Before
+    public void setUp() throws Exception {
+        System.setProperty(ConfigConstants.USERDATA_DIR_PROG_ARGUMENT, userData.getRoot().getPath());
+
+        Map<String, Object> configuration = new HashMap<>();
+
+        configuration.put(RoombaConfiguration.FIELD_IPADDRESS, ADDRESS);
+        configuration.put("statsInterval", BigDecimal.ZERO);
+
+        thing = mock(Thing.class);
+        when(thing.getUID()).thenReturn(new ThingUID(THING_TYPE_ROOMBA, "test"));
+        when(thing.getConfiguration()).thenReturn(new Configuration(configuration));
+        when(thing.getProperties()).thenReturn(new HashMap<>());
+        callback = mock(ThingHandlerCallback.class);
+
+        // A robot, which is too old, so that connecting stops right after IDENT,
+        // without touching the network
+        byte[] ident = "{\"ver\":\"1\",\"hostname\":\"Roomba-3168820480000000\",\"robotname\":\"Test\"}"
+                .getBytes(StandardCharsets.UTF_8);
+
+        identCache.put(ADDRESS, new IdentData(ident, ident.length));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void connectsAgainAfterReinitialize() {
+        RoombaHandler handler = new RoombaHandler(thing, executor, identCache, null, null, null);
+
+        handler.setCallback(callback);
+        handler.initialize();
+        verify(callback, timeout(TIMEOUT).times(1)).statusUpdated(eq(thing), argThat(connectAttempt()));
+
+        // This is what BaseThingHandler.handleConfigurationUpdate() does
+        handler.dispose();
+        handler.initialize();
+        verify(callback, timeout(TIMEOUT).times(2)).statusUpdated(eq(thing), argThat(connectAttempt()));
+
+        handler.dispose();
+    }
+
+    @Test
+    public void doesNotConnectAfterDispose() throws InterruptedException {
+        RoombaHandler handler = new RoombaHandler(thing, executor, identCache, null, null, null);
+        RoombaHandler successor = new RoombaHandler(thing, executor, identCache, null, null, null);
+        CountDownLatch hold = new CountDownLatch(1);
+
+        // Keep the queue busy, so that the connect attempt is still queued at dispose()
+        executor.getExecutor(thing.getUID().getAsString()).execute(() -> {
+            try {
+                hold.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        handler.setCallback(callback);
+        successor.setCallback(callback);
+        handler.initialize();
+        handler.dispose();
+        successor.initialize();
+        hold.countDown();
+        verify(callback, timeout(TIMEOUT).times(1)).statusUpdated(eq(thing), argThat(connectAttempt()));
+
+        // Give a stray attempt of the disposed handler a chance to show up
+        Thread.sleep(200);
+        verify(callback, times(1)).statusUpdated(eq(thing), argThat(connectAttempt()));
+
+        successor.dispose();
+    }
+
+    @Test
+    public void dropsMessagesAfterRemoval() throws InterruptedException {
+        RoombaHandler handler = new RoombaHandler(thing, executor, identCache, null, null, null);
+        AtomicInteger processed = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+
+        handler.setCallback(callback);
+        handler.initialize();
+        handler.handleRemoval();
+
+        // Arrives after the removal, but before the framework gets to dispose()
+        handler.onMessage("wifistat", new byte[0], (topic, payload) -> processed.incrementAndGet());
+        executor.getExecutor(thing.getUID().getAsString()).execute(done::countDown);
+
+        assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(0, processed.get());
+        assertFalse(handler.getTrajectoryDirectory().getParent().resolve("test.missions").toFile().exists());
+
+        handler.dispose();
+    }
+
+    private static ArgumentMatcher<ThingStatusInfo> connectAttempt() {
+        return info -> info.getStatusDetail() == ThingStatusDetail.CONFIGURATION_ERROR
+                && info.getDescription() != null && info.getDescription().startsWith("Unsupported version");
+    }
+}
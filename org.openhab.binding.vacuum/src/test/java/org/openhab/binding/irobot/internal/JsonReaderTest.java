@@ -0,0 +1,306 @@
+package org.openhab.binding.irobot.internal;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+public class JsonReaderTest {
+
+    private static JsonReader reader(String json) {
+        return new JsonReader(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Walks the whole document with hasNext() loops, like the decoders do
+    private static void walk(JsonReader reader) {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    reader.nextName();
+                    walk(reader);
+                }
+                reader.endObject();
+                break;
+            case BEGIN_ARRAY:
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    walk(reader);
+                }
+                reader.endArray();
+                break;
+            default:
+                reader.skipValue();
+                break;
+        }
+    }
+
+    private static void assertMalformed(String json) {
+        try {
+            walk(reader(json));
+            fail("Accepted " + json);
+        } catch (JSONException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void readsNestedValues() {
+        JsonReader reader = reader(
+                "{\"state\":{\"reported\":{\"batPct\":87,\"bin\":{\"present\":true,\"full\":false},\"ids\":[1,2,3]}}}");
+        List<Integer> ids = new ArrayList<>();
+        int batPct = -1;
+        boolean present = false;
+        boolean full = true;
+
+        reader.beginObject();
+        assertEquals("state", reader.nextName());
+        reader.beginObject();
+        assertEquals("reported", reader.nextName());
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "batPct":
+                    batPct = reader.nextInt();
+                    break;
+                case "bin":
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (reader.nextName().equals("present")) {
+                            present = reader.nextBoolean();
+                        } else {
+                            full = reader.nextBoolean();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                case "ids":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        ids.add(reader.nextInt());
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    fail();
+            }
+        }
+        reader.endObject();
+        reader.endObject();
+        reader.endObject();
+
+        assertEquals(87, batPct);
+        assertTrue(present);
+        assertFalse(full);
+        assertEquals(3, ids.size());
+        assertEquals(JsonReader.Token.END_DOCUMENT, reader.peek());
+    }
+
+    @Test
+    public void skipsNestedValues() {
+        JsonReader reader = reader("{\"a\":{\"b\":[1,{\"c\":\"}]\"},[]],\"d\":null},\"e\" : -1.5e3 ,\"f\":\"x\"}");
+
+        reader.beginObject();
+        assertTrue(reader.hasNext());
+        assertEquals("a", reader.nextName());
+        reader.skipValue();
+        assertTrue(reader.hasNext());
+        assertEquals("e", reader.nextName());
+        reader.skipValue();
+        assertTrue(reader.hasNext());
+        assertEquals("f", reader.nextName());
+        assertEquals("x", reader.nextString());
+        assertFalse(reader.hasNext());
+        reader.endObject();
+    }
+
+    @Test
+    public void keepsRawValue() {
+        JsonReader reader = reader("{\"a\": {\"b\":[1, 2]} }");
+
+        reader.beginObject();
+        reader.hasNext();
+        reader.nextName();
+
+        int mark = reader.mark();
+
+        reader.skipValue();
+        assertEquals("{\"b\":[1, 2]}", reader.getRawValue(mark));
+    }
+
+    @Test
+    public void walksEmptyContainers() {
+        walk(reader("{}"));
+        walk(reader("[]"));
+        walk(reader(" { \"a\" : [ ] , \"b\" : { } } "));
+    }
+
+    @Test
+    public void decodesEscapes() {
+        JsonReader reader = reader("[\"a\\\"b\\\\c\\/d\\n\\t\\r\\b\\f\",\"\\u00e9\\u20AC\",\"\u00fc\u20ac\",\"\"]");
+
+        // The third string is raw UTF-8 in the payload
+        reader.beginArray();
+        reader.hasNext();
+        assertEquals("a\"b\\c/d\n\t\r\b\f", reader.nextString());
+        reader.hasNext();
+        assertEquals("\u00e9\u20ac", reader.nextString());
+        reader.hasNext();
+        assertEquals("\u00fc\u20ac", reader.nextString());
+        reader.hasNext();
+        assertEquals("", reader.nextString());
+        assertFalse(reader.hasNext());
+        reader.endArray();
+    }
+
+    @Test
+    public void matchesNameTables() {
+        byte[][] names = JsonReader.names("x", "y");
+        JsonReader reader = reader("{\"y\":1,\"xx\":2,\"x\":3,\"\\u0078\":4}");
+
+        reader.beginObject();
+        reader.hasNext();
+        assertEquals(1, reader.nextName(names));
+        reader.skipValue();
+        reader.hasNext();
+        assertEquals(-1, reader.nextName(names));
+        reader.skipValue();
+        reader.hasNext();
+        assertEquals(0, reader.nextName(names));
+        reader.skipValue();
+        reader.hasNext();
+        // Escaped names are never matched
+        assertEquals(-1, reader.nextName(names));
+        reader.skipValue();
+        assertFalse(reader.hasNext());
+        reader.endObject();
+    }
+
+    @Test
+    public void readsNumbers() {
+        assertEquals(0, reader("0").nextInt());
+        assertEquals(-42, reader("-42").nextInt());
+        assertEquals(Integer.MAX_VALUE, reader("2147483647").nextInt());
+        assertEquals(Integer.MIN_VALUE, reader("-2147483648").nextInt());
+        assertEquals(Long.MAX_VALUE, reader("9223372036854775807").nextLong());
+        assertEquals(Long.MIN_VALUE, reader("-9223372036854775808").nextLong());
+        assertEquals(1500, reader("1.5e3").nextLong());
+        assertEquals(-2, reader("-2.7").nextLong());
+        assertEquals(3, reader("\"3\"").nextInt());
+        assertEquals(-0.25, reader("-25E-2").nextDouble(), 0);
+    }
+
+    @Test
+    public void rejectsNumbersOutOfRange() {
+        String[] numbers = { "9223372036854775808", "-9223372036854775809", "99999999999999999999", "1e19",
+                "-1e19", "\"9223372036854775808\"" };
+
+        for (String number : numbers) {
+            try {
+                reader(number).nextLong();
+                fail("Accepted " + number);
+            } catch (JSONException e) {
+                // Expected
+            }
+        }
+
+        for (String number : new String[] { "2147483648", "-2147483649" }) {
+            try {
+                reader(number).nextInt();
+                fail("Accepted " + number);
+            } catch (JSONException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void rejectsMalformedNumbers() {
+        for (String number : new String[] { "-", "abc", "\"x\"", "", "--1" }) {
+            try {
+                reader(number).nextLong();
+                fail("Accepted " + number);
+            } catch (JSONException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void rejectsMissingCommas() {
+        assertMalformed("{\"a\":1 \"b\":2}");
+        assertMalformed("[1 2]");
+        assertMalformed("[[1] [2]]");
+    }
+
+    @Test
+    public void rejectsExtraCommas() {
+        assertMalformed("{,\"a\":1}");
+        assertMalformed("{\"a\":1,}");
+        assertMalformed("{\"a\":1,,\"b\":2}");
+        assertMalformed("[,1]");
+        assertMalformed("[1,]");
+        assertMalformed("[1,,2]");
+    }
+
+    @Test
+    public void rejectsMalformedStructure() {
+        assertMalformed("{\"a\":1");
+        assertMalformed("{\"a\" 1}");
+        assertMalformed("{a:1}");
+        assertMalformed("[1}");
+        assertMalformed("{\"a\":[1,2}");
+        assertMalformed("{\"a\":\"b}");
+        assertMalformed("{\"a\":{\"b\":[1,2]}");
+    }
+
+    @Test
+    public void rejectsMalformedEscapes() {
+        for (String string : new String[] { "\"\\u12\"", "\"\\uzzzz\"", "\"abc\\", "\"abc" }) {
+            try {
+                reader(string).nextString();
+                fail("Accepted " + string);
+            } catch (JSONException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void rejectsMalformedLiterals() {
+        for (String literal : new String[] { "tru", "nul", "False", "" }) {
+            try {
+                JsonReader reader = reader(literal);
+
+                if (literal.startsWith("n")) {
+                    reader.nextNull();
+                } else {
+                    reader.nextBoolean();
+                }
+                fail("Accepted " + literal);
+            } catch (JSONException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void rejectsTooDeepNesting() {
+        StringBuilder json = new StringBuilder();
+
+        for (int i = 0; i < 100; i++) {
+            json.append('[');
+        }
+        for (int i = 0; i < 100; i++) {
+            json.append(']');
+        }
+
+        // Skipping doesn't care, walking with hasNext() does
+        reader(json.toString()).skipValue();
+        assertMalformed(json.toString());
+    }
+}
@@ -0,0 +1,42 @@
+package org.openhab.binding.irobot.roomba;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.openhab.binding.irobot.internal.JsonReader;
+
+public class CleanScheduleTest {
+
+    private static CleanSchedule parse(String json) {
+        return CleanSchedule.parse(new JsonReader(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void parsesFullSchedule() {
+        CleanSchedule schedule = parse("{\"cycle\":[\"none\",\"start\",\"start\",\"start\",\"start\",\"none\","
+                + "\"none\"],\"h\":[9,12,12,12,12,12,9],\"m\":[0,30,0,0,0,0,0]}");
+
+        assertNotNull(schedule);
+        assertEquals(0x1E, schedule.getCycleMask());
+        assertTrue(schedule.haveTimes());
+        assertEquals("12:30", schedule.formatTime(1));
+    }
+
+    @Test
+    public void parsesCycleOnly() {
+        CleanSchedule schedule = parse(
+                "{\"cycle\":[\"start\",\"none\",\"none\",\"none\",\"none\",\"none\",\"start\"]}");
+
+        assertNotNull(schedule);
+        assertEquals(0x41, schedule.getCycleMask());
+        assertFalse(schedule.haveTimes());
+    }
+
+    @Test
+    public void ignoresScheduleWithoutCycle() {
+        assertNull(parse("{\"h\":[9,12,12,12,12,12,9],\"m\":[0,0,0,0,0,0,0]}"));
+        assertNull(parse("{}"));
+    }
+}